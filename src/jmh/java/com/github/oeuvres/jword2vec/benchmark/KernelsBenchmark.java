@@ -0,0 +1,81 @@
+package com.github.oeuvres.jword2vec.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.oeuvres.jword2vec.util.Kernels;
+
+/**
+ * Compares the {@link Kernels} of the training, plain Java and Vector API,
+ * at the usual layer sizes. The Vector API ones need the profile
+ * <code>vector</code>: mvn -P vector,jmh test-compile exec:exec -Djmh.args=Kernels
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+@State(Scope.Thread)
+public class KernelsBenchmark
+{
+    @Param({ "100", "300", "512" })
+    int layerSize;
+
+    @Param({ "scalar", "vector" })
+    String kernels;
+
+    private Kernels impl;
+    private double[] hidden;
+    private double[] output;
+    private double[] error;
+
+    @Setup
+    public void setup()
+    {
+        impl = "vector".equals(kernels) ? Kernels.vector() : Kernels.scalar();
+        if (impl == null)
+            throw new IllegalStateException("Vector API kernels not compiled, use the profile vector");
+        final Random random = new Random(1);
+        hidden = new double[layerSize];
+        output = new double[layerSize];
+        error = new double[layerSize];
+        for (int i = 0; i < layerSize; i++) {
+            hidden[i] = (random.nextDouble() - 0.5) / layerSize;
+            output[i] = (random.nextDouble() - 0.5) / layerSize;
+        }
+    }
+
+    @Benchmark
+    public double dot()
+    {
+        return impl.dot(hidden, 0, output, 0, layerSize);
+    }
+
+    @Benchmark
+    public double[] axpy()
+    {
+        impl.axpy(1e-6, hidden, 0, error, 0, layerSize);
+        return error;
+    }
+
+    /** A step of negative sampling: dot product, then both updates */
+    @Benchmark
+    public double[] dotAxpy2()
+    {
+        final double f = impl.dot(hidden, 0, output, 0, layerSize);
+        impl.axpy2(1e-6 * (1 - f), hidden, 0, output, 0, error, 0, layerSize);
+        return output;
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.oeuvres.jword2vec.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.oeuvres.jword2vec.NormalizedWord2VecModel;
+import com.github.oeuvres.jword2vec.VecModel;
+
+/**
+ * Loading, writing and normalizing a model of random vectors:
+ * mvn -P jmh test-compile exec:exec -Djmh.args=ModelBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ModelBenchmark
+{
+    @Param({ "100000" })
+    int vocabSize;
+
+    @Param({ "100", "300" })
+    int layerSize;
+
+    private Path directory;
+    private File textFile;
+    private File binFile;
+    private Path outFile;
+    private VecModel model;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        directory = Files.createTempDirectory(ModelBenchmark.class.getSimpleName());
+        textFile = Synthetic.textModel(directory, vocabSize, layerSize).toFile();
+        model = VecModel.fromTextFile(textFile);
+        binFile = directory.resolve("model.bin").toFile();
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(binFile.toPath()))) {
+            model.toBinFile(out);
+        }
+        outFile = directory.resolve("out.bin");
+    }
+
+    @Benchmark
+    public VecModel fromBinFile() throws IOException
+    {
+        return VecModel.fromBinFile(binFile);
+    }
+
+    @Benchmark
+    public VecModel fromTextFile() throws IOException
+    {
+        return VecModel.fromTextFile(textFile);
+    }
+
+    @Benchmark
+    public void toBinFile() throws IOException
+    {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(outFile))) {
+            model.toBinFile(out);
+        }
+    }
+
+    @Benchmark
+    public VecModel normalize()
+    {
+        return NormalizedWord2VecModel.fromWord2VecModel(model);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        Synthetic.delete(directory);
+    }
+}
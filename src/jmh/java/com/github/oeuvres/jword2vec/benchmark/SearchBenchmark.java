@@ -0,0 +1,98 @@
+package com.github.oeuvres.jword2vec.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.oeuvres.alix.util.Edge;
+import com.github.oeuvres.alix.util.Top;
+import com.github.oeuvres.jword2vec.VecModel;
+import com.github.oeuvres.jword2vec.VecSearch;
+
+/**
+ * Nearest neighbors of random vectors among a model of random vectors, and the
+ * collector of the best scores alone:
+ * mvn -P jmh test-compile exec:exec -Djmh.args=SearchBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchBenchmark
+{
+    /** Count of queries, used in turn */
+    private static final int QUERIES = 64;
+    /** Count of scores given to {@link Top} by invocation */
+    private static final int SCORES = 100_000;
+
+    @Param({ "100000" })
+    int vocabSize;
+
+    @Param({ "100" })
+    int layerSize;
+
+    @Param({ "10", "100", "1000" })
+    int k;
+
+    private VecSearch search;
+    private double[][] queries;
+    private double[] scores;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        final Path directory = Files.createTempDirectory(SearchBenchmark.class.getSimpleName());
+        try {
+            search = VecModel.fromTextFile(Synthetic.textModel(directory, vocabSize, layerSize).toFile())
+                    .forSearch();
+        } finally {
+            Synthetic.delete(directory);
+        }
+        final Random random = new Random(3);
+        queries = new double[QUERIES][layerSize];
+        for (double[] query : queries)
+            for (int i = 0; i < layerSize; i++)
+                query[i] = random.nextGaussian();
+        scores = new double[SCORES];
+        for (int i = 0; i < SCORES; i++)
+            scores[i] = random.nextDouble();
+    }
+
+    @Benchmark
+    public Edge[] sims()
+    {
+        next = (next + 1) % QUERIES;
+        return search.sims(queries[next], k);
+    }
+
+    /** Insert many random scores, as sims does */
+    @Benchmark
+    public Top<Edge> topInsert()
+    {
+        final Top<Edge> top = new Top<>(Edge.class, k);
+        for (int i = 0; i < SCORES; i++) {
+            final double score = scores[i];
+            if (!top.isInsertable(score))
+                continue;
+            top.insert(score).targetId(i).score(score);
+        }
+        return top;
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.oeuvres.jword2vec.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Generated data for the benchmarks, the same for each run
+ */
+final class Synthetic
+{
+    private Synthetic()
+    {
+    }
+
+    /**
+     * Write a model in the text format of the C tool, random vectors
+     * 
+     * @return The file
+     */
+    static Path textModel(Path directory, int vocabSize, int layerSize) throws IOException
+    {
+        final Random random = new Random(1);
+        final Path file = directory.resolve("model-" + vocabSize + "-" + layerSize + ".txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(vocabSize + " " + layerSize + "\n");
+            final StringBuilder line = new StringBuilder();
+            for (int id = 0; id < vocabSize; id++) {
+                line.setLength(0);
+                line.append('w').append(id);
+                for (int i = 0; i < layerSize; i++)
+                    line.append(' ').append((float) random.nextGaussian());
+                writer.write(line.append('\n').toString());
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Write a corpus of sentences with words of a Zipf distribution, each
+     * sentence from one of a few topics, so that there is something to learn
+     * 
+     * @return The file
+     */
+    static Path corpus(Path directory, int sentences, int sentenceLength, int vocabSize) throws IOException
+    {
+        final Random random = new Random(2);
+        final int topics = 50;
+        // cumulated Zipf weights
+        final double[] cumulated = new double[vocabSize];
+        double sum = 0;
+        for (int rank = 0; rank < vocabSize; rank++) {
+            sum += 1.0 / (rank + 1);
+            cumulated[rank] = sum;
+        }
+        final Path file = directory.resolve("corpus-" + sentences + ".txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            final StringBuilder line = new StringBuilder();
+            for (int s = 0; s < sentences; s++) {
+                line.setLength(0);
+                final int topic = random.nextInt(topics);
+                for (int i = 0; i < sentenceLength; i++) {
+                    int rank = Arrays.binarySearch(cumulated, random.nextDouble() * sum);
+                    if (rank < 0)
+                        rank = -rank - 1;
+                    // frequent words are shared, rare ones belong to the topic
+                    final int word = rank < 100 ? rank : 100 + (rank * topics + topic) % (vocabSize - 100);
+                    if (i > 0)
+                        line.append(' ');
+                    line.append('w').append(word);
+                }
+                writer.write(line.append('\n').toString());
+            }
+        }
+        return file;
+    }
+
+    /** Delete a directory of generated files */
+    static void delete(Path directory) throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+                Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.oeuvres.jword2vec.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.oeuvres.jword2vec.VecModel;
+import com.github.oeuvres.jword2vec.neuralnetwork.NeuralNetworkType;
+
+/**
+ * Training speed on a generated corpus, the score is in words by second, as the
+ * C tool reports it: mvn -P jmh test-compile exec:exec -Djmh.args=TrainerBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+@State(Scope.Benchmark)
+public class TrainerBenchmark
+{
+    private static final int SENTENCES = 50_000;
+    private static final int SENTENCE_LENGTH = 20;
+    private static final int VOCAB_SIZE = 20_000;
+    private static final int ITERATIONS = 1;
+
+    @Param({ "CBOW", "SKIP_GRAM", "SKIP_GRAM_BATCHED" })
+    NeuralNetworkType type;
+
+    @Param({ "1", "4" })
+    int threads;
+
+    private Path directory;
+    private Path corpus;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        directory = Files.createTempDirectory(TrainerBenchmark.class.getSimpleName());
+        corpus = Synthetic.corpus(directory, SENTENCES, SENTENCE_LENGTH, VOCAB_SIZE);
+    }
+
+    /** One training, counting the vocabulary included */
+    @Benchmark
+    @OperationsPerInvocation(SENTENCES * SENTENCE_LENGTH * ITERATIONS)
+    public VecModel train() throws IOException, InterruptedException
+    {
+        return VecModel.trainer().type(type).useNegativeSamples(5).setLayerSize(100).setNumIterations(ITERATIONS)
+                .useNumThreads(threads).setListener((stage, progress) -> {
+                }).train(corpus);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        Synthetic.delete(directory);
+    }
+}
@@ -125,6 +125,24 @@ public Iterator<Entry<E>> iterator()
         return new TopIterator();
     }
 
+    /**
+     * Empty the top, to reuse it and its objects for another extraction.
+     * 
+     * @return this
+     */
+    public Top<E> clear()
+    {
+        for (int i = 0; i < size; i++) {
+            data[i].score = Double.NaN;
+        }
+        fill = 0;
+        full = false;
+        minIndex = 0;
+        min = Double.NaN;
+        max = Double.NaN;
+        return this;
+    }
+
     /**
      * Set internal pointer to the minimum score.
      */
@@ -0,0 +1,403 @@
+package com.github.oeuvres.jword2vec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A tokenized corpus, written once as a compact binary file of word ids, and
+ * read back by memory mapping for every training iteration and every run.
+ * <p>
+ * Layout, little endian:
+ * <ul>
+ * <li>header: magic, version, offset of the vocabulary section, count of
+ * tokens, count of sentences
+ * <li>ids: one int32 per token, {@link #EOS} after each sentence
+ * <li>vocabulary: count of words, then for each word its frequency (int64),
+ * its length in bytes (int32), and its UTF-8 bytes
+ * </ul>
+ * Ids are given in order of first appearance, so that the file is written in
+ * one pass over the sentences. The training vocabulary is resolved when the
+ * file is read, so that the same file may be trained with different minimum
+ * frequencies.
+ * <p>
+ * Like the C tool seeking into the training file, a reader may start at any
+ * byte offset, it will skip to the beginning of the next sentence.
+ */
+public class CorpusFile implements Closeable
+{
+    /** Marks the end of a sentence in the ids section */
+    public static final int EOS = -1;
+    /** "W2VC" */
+    static final private int MAGIC = 0x43563257;
+    static final private int VERSION = 1;
+    /** Size of the header in bytes */
+    static final private int HEADER_BYTES = 32;
+    /** Size of an id in bytes */
+    static final private int INT_BYTES = 4;
+    /** Size of the write buffer */
+    static final private int BUFFER_BYTES = 1 << 20;
+    /** Size of a mapped window for reading */
+    static final private long WINDOW_BYTES = 1 << 28;
+
+    /** File path */
+    private final Path path;
+    /** Opened read channel */
+    private final FileChannel channel;
+    /** Word by file id */
+    private final String[] words;
+    /** Frequency by file id */
+    private final long[] counts;
+    /** Count of tokens, sentence boundaries excluded */
+    private final long tokens;
+    /** Count of sentences */
+    private final long sentences;
+    /** End of the ids section, in bytes */
+    private final long idsEnd;
+
+    private CorpusFile(final Path path) throws IOException
+    {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException(String.format("%s is not a corpus file", path));
+            }
+            final int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("%s, version=%d, expected %d", path, version, VERSION));
+            }
+            idsEnd = header.getLong();
+            tokens = header.getLong();
+            sentences = header.getLong();
+
+            final long size = channel.size();
+            final ByteBuffer vocabBuffer = channel.map(FileChannel.MapMode.READ_ONLY, idsEnd, size - idsEnd)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            final int vocabSize = vocabBuffer.getInt();
+            words = new String[vocabSize];
+            counts = new long[vocabSize];
+            byte[] bytes = new byte[256];
+            for (int id = 0; id < vocabSize; id++) {
+                counts[id] = vocabBuffer.getLong();
+                final int length = vocabBuffer.getInt();
+                if (length > bytes.length) {
+                    bytes = new byte[length];
+                }
+                vocabBuffer.get(bytes, 0, length);
+                words[id] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open a corpus file previously written by {@link #write(Iterable, Path)}.
+     */
+    public static CorpusFile open(final Path path) throws IOException
+    {
+        return new CorpusFile(path);
+    }
+
+    /**
+     * Write sentences as a corpus file, in one pass, and open it for reading.
+     *
+     * @param sentences tokenized sentences.
+     * @param path      destination file, overwritten if exists.
+     * @return the corpus file, opened.
+     */
+    public static CorpusFile write(final Iterable<List<String>> sentences, final Path path) throws IOException
+    {
+        final Map<String, Integer> ids = new HashMap<>();
+        final List<String> words = new ArrayList<>();
+        long[] counts = new long[1024];
+        long tokens = 0;
+        long sentenceCount = 0;
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            out.position(HEADER_BYTES);
+            for (List<String> sentence : sentences) {
+                for (String word : sentence) {
+                    Integer id = ids.get(word);
+                    if (id == null) {
+                        id = words.size();
+                        ids.put(word, id);
+                        words.add(word);
+                        if (id == counts.length) {
+                            counts = Arrays.copyOf(counts, counts.length * 2);
+                        }
+                    }
+                    counts[id]++;
+                    tokens++;
+                    if (!buffer.hasRemaining()) {
+                        flush(buffer, out);
+                    }
+                    buffer.putInt(id);
+                }
+                if (!buffer.hasRemaining()) {
+                    flush(buffer, out);
+                }
+                buffer.putInt(EOS);
+                sentenceCount++;
+            }
+            flush(buffer, out);
+            final long idsEnd = out.position();
+            // vocabulary
+            buffer.putInt(words.size());
+            for (int id = 0; id < words.size(); id++) {
+                final byte[] bytes = words.get(id).getBytes(StandardCharsets.UTF_8);
+                if (buffer.remaining() < 12 + bytes.length) {
+                    flush(buffer, out);
+                }
+                buffer.putLong(counts[id]);
+                buffer.putInt(bytes.length);
+                if (bytes.length > buffer.remaining()) {
+                    flush(buffer, out);
+                    final ByteBuffer big = ByteBuffer.wrap(bytes);
+                    while (big.hasRemaining()) {
+                        out.write(big);
+                    }
+                } else {
+                    buffer.put(bytes);
+                }
+            }
+            flush(buffer, out);
+            // header, written last, an interrupted write is not a valid file
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(idsEnd).putLong(tokens).putLong(sentenceCount);
+            buffer.flip();
+            long position = 0;
+            while (buffer.hasRemaining()) {
+                position += out.write(buffer, position);
+            }
+        }
+        return open(path);
+    }
+
+    /** Write the content of buffer to the channel, and clear it */
+    private static void flush(final ByteBuffer buffer, final FileChannel out) throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /** Read the buffer fully from the given position of the file */
+    private void readFully(final ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            final int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException(String.format("%s, unexpected end of file", path));
+            }
+            position += n;
+        }
+    }
+
+    /** @return Path of the file */
+    public Path path()
+    {
+        return path;
+    }
+
+    /** @return Count of distinct words */
+    public int vocabSize()
+    {
+        return words.length;
+    }
+
+    /** @return Word for a file id */
+    public String word(final int id)
+    {
+        return words[id];
+    }
+
+    /** @return Frequency of a word by its file id */
+    public long count(final int id)
+    {
+        return counts[id];
+    }
+
+    /** @return Count of tokens, sentence boundaries excluded */
+    public long tokens()
+    {
+        return tokens;
+    }
+
+    /** @return Count of sentences */
+    public long sentences()
+    {
+        return sentences;
+    }
+
+    /** @return {@link Vocab} of the words with a count at least of minCount */
+    public Vocab vocab(final long minCount)
+    {
+        return Vocab.sort(words, counts, words.length, minCount);
+    }
+
+    /**
+     * @param keep words kept whatever their count, see
+     *             {@link Vocab#sort(String[], long[], int, long, String[])}
+     * @return {@link Vocab} of the words with a count at least of minCount, and
+     *         of the words to keep
+     */
+    public Vocab vocab(final long minCount, final String[] keep)
+    {
+        return Vocab.sort(words, counts, words.length, minCount, keep);
+    }
+
+    /**
+     * Split the ids section in byte ranges of nearly equal size, like the C tool
+     * gives each thread an offset in the training file.
+     *
+     * @param parts count of ranges.
+     * @return parts + 1 offsets, in bytes, starts of ranges and end of the last
+     *         one.
+     */
+    public long[] split(final int parts)
+    {
+        Preconditions.checkArgument(parts > 0, "Value must be positive");
+        final long ints = (idsEnd - HEADER_BYTES) / INT_BYTES;
+        final long[] offsets = new long[parts + 1];
+        for (int i = 0; i <= parts; i++) {
+            offsets[i] = HEADER_BYTES + (ints * i / parts) * INT_BYTES;
+        }
+        return offsets;
+    }
+
+    /**
+     * A reader of the sentences beginning in [start, end). If start is not the
+     * beginning of a sentence, the reader skips to the next one. The last sentence
+     * is read to its end, even after end.
+     *
+     * @param start offset in bytes, as given by {@link #split(int)}.
+     * @param end   offset in bytes, as given by {@link #split(int)}.
+     */
+    public Cursor cursor(final long start, final long end) throws IOException
+    {
+        return new Cursor(start, end);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * Reads sentences of file ids from a memory mapped window of the file. Not
+     * thread safe, one cursor by thread.
+     */
+    public class Cursor
+    {
+        /** Ids of the current sentence, array may be bigger than length */
+        private int[] ids = new int[1024];
+        /** Count of ids in the current sentence */
+        private int length;
+        /** Current window */
+        private IntBuffer window;
+        /** Offset in bytes of the next id to read */
+        private long position;
+        /** No sentence will begin at or after this offset */
+        private final long end;
+
+        private Cursor(final long start, final long end) throws IOException
+        {
+            Preconditions.checkArgument(start >= HEADER_BYTES && start % INT_BYTES == 0, "Bad start offset %s",
+                    start);
+            this.end = Math.min(end, idsEnd);
+            if (start == HEADER_BYTES) {
+                position = start;
+                map(position);
+            } else {
+                // not at the start of the file, the previous id tells if we are at the start
+                // of a sentence, otherwise go to the next one
+                position = start - INT_BYTES;
+                map(position);
+                while (position < idsEnd && nextInt() != EOS)
+                    ;
+            }
+        }
+
+        /** Map a window of the file from offset */
+        private void map(final long offset) throws IOException
+        {
+            final long size = Math.min(WINDOW_BYTES, idsEnd - offset);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, offset, size).order(ByteOrder.LITTLE_ENDIAN)
+                    .asIntBuffer();
+        }
+
+        /** Read the next id, remap the window if needed */
+        private int nextInt() throws IOException
+        {
+            if (!window.hasRemaining()) {
+                map(position);
+            }
+            position += INT_BYTES;
+            return window.get();
+        }
+
+        /**
+         * Read the next sentence.
+         *
+         * @return false if there is no more sentence in the range.
+         */
+        public boolean next() throws IOException
+        {
+            length = 0;
+            if (position >= end) {
+                return false;
+            }
+            while (position < idsEnd) {
+                final int id = nextInt();
+                if (id == EOS) {
+                    break;
+                }
+                if (length == ids.length) {
+                    ids = Arrays.copyOf(ids, ids.length * 2);
+                }
+                ids[length++] = id;
+            }
+            return true;
+        }
+
+        /** @return Ids of the current sentence, valid to {@link #length()} */
+        public int[] ids()
+        {
+            return ids;
+        }
+
+        /** @return Count of ids in the current sentence */
+        public int length()
+        {
+            return length;
+        }
+
+        /** @return Offset in bytes of the next id to read */
+        public long position()
+        {
+            return position;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.github.oeuvres.jword2vec;
+
+import com.github.oeuvres.jword2vec.util.Kernels;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Multiset;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+
+/**
+ * Vectors of documents, the weighted mean of the vectors of their words, for
+ * many documents at once, see {@link VecModel#embedder()} and
+ * {@link VecSearch#embedder()}.
+ * <p>
+ * The calling thread encodes the documents as word ids, in batches recycled
+ * through a ring, and worker threads compute the vectors of each batch and
+ * write them to the output, at the index of the document in the stream. No
+ * object is allocated by document. Words out of the vocabulary are ignored, a
+ * document without a known word has a vector of zeros.
+ */
+public class DocumentEmbedder
+{
+    /** Documents by batch */
+    private static final int BATCH_SIZE = 1_024;
+    /** Batches by worker thread in the ring */
+    private static final int BATCHES_BY_THREAD = 4;
+    /** Delay between two checks of the workers while waiting for a batch */
+    private static final long POLL_MILLIS = 100;
+
+    private final VecModel model;
+    private final int layerSize;
+    /** Weight of each word, by id, null for the plain mean */
+    private double[] weights;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+
+    DocumentEmbedder(final VecModel model)
+    {
+        this.model = model;
+        this.layerSize = model.layerSize;
+    }
+
+    /**
+     * Weight each word, the vector of a document is the sum of the weighted
+     * vectors of its words, divided by the sum of their weights.
+     *
+     * @param weight Weight of a word of the vocabulary, positive or 0
+     */
+    public DocumentEmbedder useWeights(ToDoubleFunction<String> weight)
+    {
+        final double[] weights = new double[model.vocab.length];
+        for (int id = 0; id < weights.length; id++) {
+            weights[id] = weight.applyAsDouble(model.vocab[id]);
+            Preconditions.checkArgument(weights[id] >= 0, "Negative weight for “%s”", model.vocab[id]);
+        }
+        this.weights = weights;
+        return this;
+    }
+
+    /**
+     * Weight each word by a / (a + p(w)), p(w) its frequency in the corpus, the
+     * smooth inverse frequency of Arora et al., “A Simple but Tough-to-Beat
+     * Baseline for Sentence Embeddings”. Frequent words count less.
+     *
+     * @param counts Counts of the words in the corpus, those of the vocabulary of
+     *               the training do
+     * @param a      Smoothing, usually from 1e-4 to 1e-3
+     */
+    public DocumentEmbedder useSifWeights(Multiset<String> counts, double a)
+    {
+        Preconditions.checkArgument(a > 0, "Value must be positive");
+        final double total = counts.size();
+        return useWeights(word -> a / (a + counts.count(word) / total));
+    }
+
+    /**
+     * Count of threads computing the vectors, while the calling thread encodes
+     * the documents
+     * <p>
+     * Defaults to the count of processors
+     */
+    public DocumentEmbedder useNumThreads(int numThreads)
+    {
+        Preconditions.checkArgument(numThreads > 0, "Value must be positive");
+        this.numThreads = numThreads;
+        return this;
+    }
+
+    /** @return Vector of a document, computed without a batch */
+    public double[] embed(String[] document)
+    {
+        final Kernels kernels = Kernels.get();
+        final double[] vector = new double[layerSize];
+        final double[] row = new double[layerSize];
+        double sum = 0;
+        for (String word : document) {
+            final Integer id = model.word4id.get(word);
+            if (id != null)
+                sum += addWord(id, vector, 0, row, kernels);
+        }
+        if (sum > 0)
+            kernels.scale(1 / sum, vector, 0, layerSize);
+        return vector;
+    }
+
+    /**
+     * Add the weighted vector of a word to the vector of a document
+     *
+     * @param id      Id of the word
+     * @param vectors Vectors of the documents
+     * @param to      Index of the vector of the document in vectors
+     * @param row     Buffer for the vector of the word
+     * @return Weight of the word, 0 if not added
+     */
+    private double addWord(int id, double[] vectors, int to, double[] row, Kernels kernels)
+    {
+        final double weight = (weights == null) ? 1 : weights[id];
+        if (weight == 0)
+            return 0;
+        model.vectors.get(id * layerSize, row);
+        kernels.axpy(weight, row, 0, vectors, to, layerSize);
+        return weight;
+    }
+
+    /**
+     * Write the vectors of all the documents in a buffer, one after the other,
+     * from its index 0. The buffer may be one of a memory mapped file.
+     *
+     * @param documents Words of each document
+     * @param out       Buffer of at least count of documents × layer size
+     * @return Count of documents
+     */
+    public long embed(Stream<String[]> documents, DoubleBuffer out) throws InterruptedException
+    {
+        try {
+            return embed(documents, (first, vectors, count) -> out.put((int) (first * layerSize), vectors, 0,
+                    count * layerSize));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Write the vectors of all the documents in a file, one after the other, as
+     * little endian doubles, to be read with
+     * {@link FileChannel#map(java.nio.channels.FileChannel.MapMode, long, long)}.
+     * The file is replaced. Each thread writes its batches at their position,
+     * without a file mapped in memory, there is no limit of size.
+     *
+     * @param documents Words of each document
+     * @param file      File of the vectors
+     * @return Count of documents
+     */
+    public long embed(Stream<String[]> documents, Path file) throws IOException, InterruptedException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer
+                    .allocateDirect(BATCH_SIZE * layerSize * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN));
+            return embed(documents, (first, vectors, count) -> {
+                final ByteBuffer buffer = buffers.get();
+                buffer.clear();
+                buffer.asDoubleBuffer().put(vectors, 0, count * layerSize);
+                buffer.limit(count * layerSize * Double.BYTES);
+                long position = first * layerSize * Double.BYTES;
+                while (buffer.hasRemaining())
+                    position += channel.write(buffer, position);
+            });
+        }
+    }
+
+    /** Destination of the vectors of a batch, called by the worker threads */
+    private interface Output
+    {
+        void write(long first, double[] vectors, int count) throws IOException;
+    }
+
+    private long embed(Stream<String[]> documents, Output output) throws IOException, InterruptedException
+    {
+        final BlockingQueue<Batch> free = new ArrayBlockingQueue<>(numThreads * BATCHES_BY_THREAD);
+        final BlockingQueue<Batch> full = new ArrayBlockingQueue<>(numThreads * BATCHES_BY_THREAD + 1);
+        for (int i = 0; i < numThreads * BATCHES_BY_THREAD; i++)
+            free.add(new Batch());
+        final Batch end = new Batch();
+        final ExecutorService ex = Executors.newFixedThreadPool(numThreads,
+                new ThreadFactoryBuilder().setNameFormat("word2vec-embed-%d").setDaemon(true).build());
+        final List<Future<?>> futures = new ArrayList<>(numThreads);
+        long count = 0;
+        try {
+            for (int i = 0; i < numThreads; i++) {
+                futures.add(ex.submit(() -> {
+                    final double[] vectors = new double[BATCH_SIZE * layerSize];
+                    final double[] row = new double[layerSize];
+                    while (true) {
+                        final Batch batch = full.take();
+                        if (batch == end) {
+                            // for the other workers
+                            full.put(end);
+                            return null;
+                        }
+                        batch.compute(vectors, 0, row);
+                        output.write(batch.first, vectors, batch.size);
+                        free.put(batch);
+                    }
+                }));
+            }
+            try (Stream<String[]> stream = documents) {
+                final Iterator<String[]> it = stream.iterator();
+                Batch batch = null;
+                while (it.hasNext()) {
+                    if (batch == null) {
+                        batch = take(free, futures);
+                        batch.clear(count);
+                    }
+                    batch.add(it.next());
+                    count++;
+                    if (batch.size == BATCH_SIZE) {
+                        full.put(batch);
+                        batch = null;
+                    }
+                }
+                if (batch != null)
+                    full.put(batch);
+            }
+            full.put(end);
+            for (Future<?> future : futures)
+                future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IllegalStateException("Error computing document vectors", e.getCause());
+        } finally {
+            ex.shutdownNow();
+        }
+        return count;
+    }
+
+    /** Take a free batch, fails if a worker has failed rather than wait forever */
+    private static Batch take(BlockingQueue<Batch> free, List<Future<?>> futures)
+            throws InterruptedException, ExecutionException
+    {
+        while (true) {
+            final Batch batch = free.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (batch != null)
+                return batch;
+            for (Future<?> future : futures)
+                if (future.isDone())
+                    future.get();
+        }
+    }
+
+    /** Documents encoded as word ids, reused */
+    private class Batch
+    {
+        /** Ids of all the documents */
+        private int[] words = new int[BATCH_SIZE * 32];
+        /** End of each document in words */
+        private final int[] ends = new int[BATCH_SIZE];
+        /** Count of documents */
+        private int size;
+        /** Index of the first document in the stream */
+        private long first;
+
+        void clear(long first)
+        {
+            this.first = first;
+            this.size = 0;
+        }
+
+        /** Encode a document, without the words out of vocabulary */
+        void add(String[] document)
+        {
+            int n = size == 0 ? 0 : ends[size - 1];
+            if (words.length < n + document.length)
+                words = Arrays.copyOf(words, Math.max(words.length * 2, n + document.length));
+            for (String word : document) {
+                final Integer id = model.word4id.get(word);
+                if (id == null)
+                    continue;
+                words[n++] = id;
+            }
+            ends[size++] = n;
+        }
+
+        /**
+         * Compute the vectors of the documents
+         *
+         * @param vectors Vectors of the documents, one after the other
+         * @param offset  Index of the first vector in vectors
+         * @param row     Buffer for the vector of a word
+         */
+        void compute(double[] vectors, int offset, double[] row)
+        {
+            final Kernels kernels = Kernels.get();
+            int start = 0;
+            for (int d = 0; d < size; d++) {
+                final int to = offset + d * layerSize;
+                Arrays.fill(vectors, to, to + layerSize, 0);
+                double sum = 0;
+                for (int i = start; i < ends[d]; i++)
+                    sum += addWord(words[i], vectors, to, row, kernels);
+                if (sum > 0)
+                    kernels.scale(1 / sum, vectors, to, layerSize);
+                start = ends[d];
+            }
+        }
+    }
+}
@@ -2,13 +2,8 @@
 
 import com.github.oeuvres.jword2vec.VecTrainerBuilder.TrainingProgressListener;
 import com.github.oeuvres.jword2vec.VecTrainerBuilder.TrainingProgressListener.Stage;
-import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableMultiset;
-import com.google.common.collect.Multiset.Entry;
 
-import java.util.ArrayList;
-import java.util.Map;
+import java.util.stream.IntStream;
 
 /**
  * Word2Vec library relies on a Huffman encoding scheme
@@ -19,57 +14,53 @@
  */
 public class HuffmanCoding
 {
-    /** Node */
-    public static class HuffmanNode
+    /**
+     * Codes and points of all the words, packed in flat arrays. Those of word id
+     * are in [offsets[id], offsets[id + 1]).
+     */
+    public static class Codes
     {
-        /** Array of 0's and 1's */
+        /** Start of the code of each word, size of vocabulary + 1 */
+        public final int[] offsets;
+        /** 0's and 1's */
         public final byte[] code;
-        /** Array of parent node index offsets */
+        /** Parent node index offsets */
         public final int[] point;
-        /** Index of the Huffman node */
-        public final int idx;
-        /** Frequency of the token */
-        public final int count;
 
-        private HuffmanNode(byte[] code, int[] point, int idx, int count)
+        private Codes(int[] offsets, byte[] code, int[] point)
         {
+            this.offsets = offsets;
             this.code = code;
             this.point = point;
-            this.idx = idx;
-            this.count = count;
         }
     }
 
-    private final ImmutableMultiset<String> vocab;
+    private final Vocab vocab;
     private final TrainingProgressListener listener;
 
     /**
-     * @param vocab    {@link Multiset} of tokens, sorted by frequency descending
+     * @param vocab    Vocabulary, sorted by frequency descending
      * @param listener Progress listener
      */
-    public HuffmanCoding(ImmutableMultiset<String> vocab, TrainingProgressListener listener)
+    public HuffmanCoding(Vocab vocab, TrainingProgressListener listener)
     {
         this.vocab = vocab;
         this.listener = listener;
     }
 
     /**
-     * @return {@link Map} from each given token to a {@link HuffmanNode}
+     * @return {@link Codes} of the words of the vocabulary
      */
-    public Map<String, HuffmanNode> encode() throws InterruptedException
+    public Codes encode() throws InterruptedException
     {
-        final int numTokens = vocab.elementSet().size();
+        final int numTokens = vocab.size();
 
         int[] parentNode = new int[numTokens * 2 + 1];
         byte[] binary = new byte[numTokens * 2 + 1];
         long[] count = new long[numTokens * 2 + 1];
-        int i = 0;
-        for (Entry<String> e : vocab.entrySet()) {
-            count[i] = e.getCount();
-            i++;
-        }
-        Preconditions.checkState(i == numTokens, "Expected %s to match %s", i, numTokens);
-        for (i = numTokens; i < count.length; i++)
+        for (int i = 0; i < numTokens; i++)
+            count[i] = vocab.count(i);
+        for (int i = numTokens; i < count.length; i++)
             count[i] = (long) 1e15;
 
         createTree(numTokens, count, binary, parentNode);
@@ -123,7 +114,7 @@ private void createTree(int numTokens, long[] count, byte[] binary, int[] parent
             parentNode[min2i] = newNodeIdx;
             binary[min2i] = 1;
 
-            if (a % 1_000 == 0) {
+            if (a % 100_000 == 0) {
                 if (Thread.currentThread().isInterrupted())
                     throw new InterruptedException("Interrupted while encoding huffman tree");
                 listener.update(Stage.CREATE_HUFFMAN_ENCODING, (0.5 * a) / numTokens);
@@ -132,50 +123,49 @@ private void createTree(int numTokens, long[] count, byte[] binary, int[] parent
     }
 
     /**
-     * @return Ordered map from each token to its {@link HuffmanNode}, ordered by
-     *         frequency descending
+     * Assign a binary code to each word, in parallel: a first pass gives the
+     * length of the codes, to pack them, a second one writes them.
+     *
+     * @return {@link Codes} packed by word id
      */
-    private Map<String, HuffmanNode> encode(byte[] binary, int[] parentNode) throws InterruptedException
+    private Codes encode(final byte[] binary, final int[] parentNode) throws InterruptedException
     {
-        int numTokens = vocab.elementSet().size();
+        final int numTokens = vocab.size();
+        final int root = numTokens * 2 - 2;
 
-        // Now assign binary code to each unique token
-        ImmutableMap.Builder<String, HuffmanNode> result = ImmutableMap.builder();
-        int nodeIdx = 0;
-        for (Entry<String> e : vocab.entrySet()) {
+        final int[] offsets = new int[numTokens + 1];
+        IntStream.range(0, numTokens).parallel().forEach(nodeIdx -> {
+            int codeLen = 0;
             int curNodeIdx = nodeIdx;
-            ArrayList<Byte> code = new ArrayList<>();
-            ArrayList<Integer> points = new ArrayList<>();
-            while (true) {
-                code.add(binary[curNodeIdx]);
-                points.add(curNodeIdx);
+            do {
+                codeLen++;
                 curNodeIdx = parentNode[curNodeIdx];
-                if (curNodeIdx == numTokens * 2 - 2)
-                    break;
-            }
-            int codeLen = code.size();
-            final int count = e.getCount();
-            final byte[] rawCode = new byte[codeLen];
-            final int[] rawPoints = new int[codeLen + 1];
-
-            rawPoints[0] = numTokens - 2;
+            } while (curNodeIdx != root);
+            offsets[nodeIdx + 1] = codeLen;
+        });
+        for (int i = 0; i < numTokens; i++)
+            offsets[i + 1] += offsets[i];
+        if (Thread.currentThread().isInterrupted())
+            throw new InterruptedException("Interrupted while encoding huffman tree");
+        listener.update(Stage.CREATE_HUFFMAN_ENCODING, 0.75);
+
+        final byte[] code = new byte[offsets[numTokens]];
+        final int[] point = new int[offsets[numTokens]];
+        IntStream.range(0, numTokens).parallel().forEach(nodeIdx -> {
+            final int start = offsets[nodeIdx];
+            final int codeLen = offsets[nodeIdx + 1] - start;
+            // walk from the leaf to the root, the code is written backwards,
+            // and the first point is the root
+            point[start] = numTokens - 2;
+            int curNodeIdx = nodeIdx;
             for (int i = 0; i < codeLen; i++) {
-                rawCode[codeLen - i - 1] = code.get(i);
-                rawPoints[codeLen - i] = points.get(i) - numTokens;
-            }
-
-            String token = e.getElement();
-            result.put(token, new HuffmanNode(rawCode, rawPoints, nodeIdx, count));
-
-            if (nodeIdx % 1_000 == 0) {
-                if (Thread.currentThread().isInterrupted())
-                    throw new InterruptedException("Interrupted while encoding huffman tree");
-                listener.update(Stage.CREATE_HUFFMAN_ENCODING, 0.5 + (0.5 * nodeIdx) / numTokens);
+                code[start + codeLen - i - 1] = binary[curNodeIdx];
+                if (i > 0)
+                    point[start + codeLen - i] = curNodeIdx - numTokens;
+                curNodeIdx = parentNode[curNodeIdx];
             }
-
-            nodeIdx++;
-        }
-
-        return result.build();
+        });
+        listener.update(Stage.CREATE_HUFFMAN_ENCODING, 1.0);
+        return new Codes(offsets, code, point);
     }
 }
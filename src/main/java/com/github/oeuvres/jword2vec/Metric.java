@@ -0,0 +1,101 @@
+package com.github.oeuvres.jword2vec;
+
+import com.github.oeuvres.jword2vec.util.Kernels;
+
+/**
+ * Comparisons of the vectors of a {@link VecSearch}, see
+ * {@link VecModel#forSearch(Metric)}. Each metric scores a block of rows in its
+ * own loop, chosen once by block, without a test by element. Scores are higher
+ * for nearer vectors, the distances are negated while searching, and returned
+ * as distances, from the smallest.
+ */
+public enum Metric
+{
+    /** Inner product of the raw vectors */
+    DOT(false) {
+        @Override
+        void scores(double[] query, int queryOffset, double[] rows, int rowCount, int layerSize, double[] scores)
+        {
+            for (int r = 0; r < rowCount; r++)
+                scores[r] = KERNELS.dot(query, queryOffset, rows, r * layerSize, layerSize);
+        }
+    },
+    /** Inner product of the normalized vectors, the default */
+    COSINE(true) {
+        @Override
+        void scores(double[] query, int queryOffset, double[] rows, int rowCount, int layerSize, double[] scores)
+        {
+            DOT.scores(query, queryOffset, rows, rowCount, layerSize, scores);
+        }
+    },
+    /** Euclidean distance of the raw vectors */
+    EUCLIDEAN(false) {
+        @Override
+        void scores(double[] query, int queryOffset, double[] rows, int rowCount, int layerSize, double[] scores)
+        {
+            for (int r = 0; r < rowCount; r++) {
+                final int offset = r * layerSize;
+                double sum = 0;
+                for (int i = 0; i < layerSize; i++) {
+                    final double diff = query[queryOffset + i] - rows[offset + i];
+                    sum += diff * diff;
+                }
+                scores[r] = -sum;
+            }
+        }
+
+        @Override
+        double value(double score)
+        {
+            return Math.sqrt(-score);
+        }
+    },
+    /** Manhattan distance of the raw vectors, the sum of the absolute differences */
+    MANHATTAN(false) {
+        @Override
+        void scores(double[] query, int queryOffset, double[] rows, int rowCount, int layerSize, double[] scores)
+        {
+            for (int r = 0; r < rowCount; r++) {
+                final int offset = r * layerSize;
+                double sum = 0;
+                for (int i = 0; i < layerSize; i++)
+                    sum += Math.abs(query[queryOffset + i] - rows[offset + i]);
+                scores[r] = -sum;
+            }
+        }
+
+        @Override
+        double value(double score)
+        {
+            return -score;
+        }
+    },
+    ;
+
+    private static final Kernels KERNELS = Kernels.get();
+
+    /** Whether the vectors are normalized before the search */
+    final boolean normalized;
+
+    private Metric(boolean normalized)
+    {
+        this.normalized = normalized;
+    }
+
+    /**
+     * Score rows against a query, the higher the nearer
+     *
+     * @param query     Vector of the query, from its offset
+     * @param rows      Vectors, one after the other
+     * @param rowCount  Count of vectors
+     * @param layerSize Size of a vector
+     * @param scores    Score of each row
+     */
+    abstract void scores(double[] query, int queryOffset, double[] rows, int rowCount, int layerSize, double[] scores);
+
+    /** @return Value returned for a score, the distance for a distance */
+    double value(double score)
+    {
+        return score;
+    }
+}
@@ -0,0 +1,178 @@
+package com.github.oeuvres.jword2vec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import com.github.oeuvres.alix.util.Edge;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Nearest neighbors of all the words of a model, read from a file written by
+ * {@link NeighborGraphWriter}, see {@link #open(Path, VecModel)}.
+ * <p>
+ * The file is little endian: a header, then one record by word id, of k int
+ * ids of its neighbors followed by their k float scores, from the nearest, -1
+ * ids after the last neighbor if a word has fewer. The scores are those of the
+ * {@link Metric} of the search, distances from the smallest for a distance.
+ * Records are read on demand, there is no limit of size.
+ */
+public class NeighborGraph implements Closeable
+{
+    /** “W2VG” */
+    static final int MAGIC = 0x57325647;
+    static final int VERSION = 1;
+    /** Magic, version, vocabulary size, k, metric, 0, hash of the vocabulary, words done */
+    static final int HEADER_BYTES = 4 + 4 + 4 + 4 + 4 + 4 + 8 + 8;
+    /** Position of the metric in the header */
+    static final int METRIC_POSITION = 16;
+    /** Position of the hash of the vocabulary in the header */
+    static final int HASH_POSITION = 24;
+    /** Position of the count of words done in the header */
+    static final int DONE_POSITION = HEADER_BYTES - 8;
+
+    private final FileChannel channel;
+    private final String[] vocab;
+    private final VecModel model;
+    private final int k;
+    private final Metric metric;
+    private final long size;
+
+    private NeighborGraph(FileChannel channel, VecModel model, int k, Metric metric, long size)
+    {
+        this.channel = channel;
+        this.model = model;
+        this.vocab = model.vocab;
+        this.k = k;
+        this.metric = metric;
+        this.size = size;
+    }
+
+    /**
+     * Open the neighbors of the words of a model
+     *
+     * @param model The model of the graph, or a model with the same vocabulary
+     */
+    public static NeighborGraph open(Path file, VecModel model) throws IOException
+    {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            final ByteBuffer header = readHeader(channel);
+            checkHeader(header, model, file);
+            return new NeighborGraph(channel, model, header.getInt(12), Metric.values()[header.getInt(METRIC_POSITION)],
+                    header.getLong(DONE_POSITION));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static ByteBuffer readHeader(FileChannel channel) throws IOException
+    {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining())
+            if (channel.read(header, header.position()) < 0)
+                throw new IOException("Truncated header of neighbor graph");
+        return header.flip();
+    }
+
+    /** Check that a header is one of a graph of a model */
+    static void checkHeader(ByteBuffer header, VecModel model, Path file) throws IOException
+    {
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+            throw new IOException(String.format("%s is not a neighbor graph", file));
+        if (header.getInt(METRIC_POSITION) < 0 || header.getInt(METRIC_POSITION) >= Metric.values().length)
+            throw new IOException(String.format("%s is a neighbor graph of an unknown metric", file));
+        if (header.getInt(8) != model.vocab.length || header.getLong(HASH_POSITION) != vocabHash(model.vocab))
+            throw new IOException(String.format("%s is a neighbor graph of another vocabulary", file));
+    }
+
+    static ByteBuffer header(VecModel model, int k, Metric metric, long done)
+    {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(model.vocab.length).putInt(k).putInt(metric.ordinal()).putInt(0)
+                .putLong(vocabHash(model.vocab)).putLong(done);
+        return header.flip();
+    }
+
+    static long vocabHash(String[] vocab)
+    {
+        final Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (String word : vocab)
+            hasher.putUnencodedChars(word).putChar('\n');
+        return hasher.hash().asLong();
+    }
+
+    /** @return Bytes of the record of a word */
+    static long recordBytes(int k)
+    {
+        return (long) k * (Integer.BYTES + Float.BYTES);
+    }
+
+    /** @return Count of neighbors by word */
+    public int k()
+    {
+        return k;
+    }
+
+    /** @return Comparison of the vectors, the scores are distances for a distance */
+    public Metric metric()
+    {
+        return metric;
+    }
+
+    /**
+     * @return Count of words with their neighbors, the first ones, less than the
+     *         vocabulary if the writing has not been completed
+     */
+    public long size()
+    {
+        return size;
+    }
+
+    /**
+     * @return Nearest neighbors of a word, from the nearest, with the word as
+     *         source and the neighbors as targets, null if the word is unknown
+     */
+    public Edge[] neighbors(String word) throws IOException
+    {
+        final Integer id = model.wordId(word);
+        return (id == null) ? null : neighbors(id);
+    }
+
+    /** @return Nearest neighbors of a word id, see {@link #neighbors(String)} */
+    public Edge[] neighbors(int id) throws IOException
+    {
+        Preconditions.checkElementIndex(id, (int) size, "Word id");
+        final ByteBuffer record = ByteBuffer.allocate((int) recordBytes(k)).order(ByteOrder.LITTLE_ENDIAN);
+        final long position = HEADER_BYTES + id * recordBytes(k);
+        while (record.hasRemaining())
+            if (channel.read(record, position + record.position()) < 0)
+                throw new IOException("Truncated neighbor graph");
+        record.flip();
+        final Edge[] edges = new Edge[k];
+        int count = 0;
+        for (; count < k; count++) {
+            final int target = record.getInt(count * Integer.BYTES);
+            if (target < 0)
+                break;
+            final double score = record.getFloat(k * Integer.BYTES + count * Float.BYTES);
+            edges[count] = new Edge().sourceId(id).sourceLabel(vocab[id]).targetId(target)
+                    .targetLabel(vocab[target]).score(score);
+        }
+        return Arrays.copyOf(edges, count);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+}
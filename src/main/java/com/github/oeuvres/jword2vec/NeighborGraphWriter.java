@@ -0,0 +1,241 @@
+package com.github.oeuvres.jword2vec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.github.oeuvres.alix.util.Edge;
+import com.github.oeuvres.alix.util.Top;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Writes the k nearest neighbors of all the words of a model in a file, to read
+ * with {@link NeighborGraph}, see {@link VecSearch#graphWriter(int)}.
+ * <p>
+ * The search is exact, by the {@link Metric} of the {@link VecSearch}, as
+ * {@link VecSearch#sims(double[], int)}, the word itself excluded. Threads
+ * take blocks of words, and compare them to the vocabulary by blocks of rows,
+ * each row loaded once for all the words of the block, a blocked matrix
+ * product. Records are written at their position as
+ * blocks are done, and the header keeps the count of the first words done, so
+ * that a writing stopped is resumed from there.
+ */
+public class NeighborGraphWriter
+{
+    /** Words compared together */
+    private static final int QUERY_BLOCK = 64;
+    /** Rows of the vocabulary loaded together, small enough for the cache */
+    private static final int ROW_BLOCK = 128;
+
+    /** Receives the progress of the writing */
+    public interface ProgressListener
+    {
+        /**
+         * @param done  Count of words with their neighbors written
+         * @param total Count of words of the vocabulary
+         */
+        void update(long done, long total);
+    }
+
+    private final VecModel model;
+    private final Metric metric;
+    private final int layerSize;
+    private final int k;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    private ProgressListener listener = (done, total) -> {
+    };
+
+    NeighborGraphWriter(VecModel model, Metric metric, int k)
+    {
+        Preconditions.checkArgument(k > 0, "Value must be positive");
+        this.model = model;
+        this.metric = metric;
+        this.layerSize = model.layerSize;
+        // the word itself is not its neighbor
+        this.k = Math.max(1, Math.min(k, model.vocab.length - 1));
+    }
+
+    /**
+     * Count of threads comparing the words
+     * <p>
+     * Defaults to the count of processors
+     */
+    public NeighborGraphWriter useNumThreads(int numThreads)
+    {
+        Preconditions.checkArgument(numThreads > 0, "Value must be positive");
+        this.numThreads = numThreads;
+        return this;
+    }
+
+    /** Receive the progress of the writing, from the threads comparing the words */
+    public NeighborGraphWriter setListener(ProgressListener listener)
+    {
+        this.listener = Preconditions.checkNotNull(listener);
+        return this;
+    }
+
+    /**
+     * Write the neighbors of all the words in a file, or resume a file left
+     * incomplete by a previous writing for the same vocabulary and k
+     *
+     * @return Count of words computed by this call
+     */
+    public long write(Path file) throws IOException, InterruptedException
+    {
+        final int vocabSize = model.vocab.length;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            final long start = resume(channel, file);
+            final int blocks = (int) ((vocabSize - start + QUERY_BLOCK - 1) / QUERY_BLOCK);
+            final Progress progress = new Progress(channel, start, blocks);
+            final ExecutorService ex = Executors.newFixedThreadPool(numThreads,
+                    new ThreadFactoryBuilder().setNameFormat("word2vec-graph-%d").setDaemon(true).build());
+            final ThreadLocal<Block> buffers = ThreadLocal.withInitial(Block::new);
+            final List<Future<?>> futures = new ArrayList<>(blocks);
+            try {
+                for (int b = 0; b < blocks; b++) {
+                    final int block = b;
+                    futures.add(ex.submit(() -> {
+                        final int from = (int) start + block * QUERY_BLOCK;
+                        final int to = Math.min(from + QUERY_BLOCK, vocabSize);
+                        buffers.get().write(channel, from, to);
+                        progress.done(block, to - from);
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures)
+                    future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                throw new IllegalStateException("Error computing the neighbor graph", e.getCause());
+            } finally {
+                ex.shutdownNow();
+            }
+            return vocabSize - start;
+        }
+    }
+
+    /** @return First word to compute, after those of a previous writing */
+    private long resume(FileChannel channel, Path file) throws IOException
+    {
+        if (channel.size() >= NeighborGraph.HEADER_BYTES) {
+            final ByteBuffer header = NeighborGraph.readHeader(channel);
+            NeighborGraph.checkHeader(header, model, file);
+            if (header.getInt(12) != k)
+                throw new IOException(String.format("%s is a neighbor graph with k=%d", file, header.getInt(12)));
+            if (header.getInt(NeighborGraph.METRIC_POSITION) != metric.ordinal())
+                throw new IOException(String.format("%s is a neighbor graph of another metric", file));
+            return header.getLong(NeighborGraph.DONE_POSITION);
+        }
+        if (channel.size() != 0)
+            throw new IOException(String.format("%s is not a neighbor graph", file));
+        channel.write(NeighborGraph.header(model, k, metric, 0), 0);
+        return 0;
+    }
+
+    /** Blocks done, and the count of the first words done in the header */
+    private class Progress
+    {
+        private final FileChannel channel;
+        private final long start;
+        private final BitSet blocks;
+        private int first;
+        private long words;
+
+        Progress(FileChannel channel, long start, int count)
+        {
+            this.channel = channel;
+            this.start = start;
+            this.blocks = new BitSet(count);
+            this.words = start;
+        }
+
+        synchronized void done(int block, int size) throws IOException
+        {
+            blocks.set(block);
+            words += size;
+            final int previous = first;
+            first = blocks.nextClearBit(first);
+            if (first != previous) {
+                final long done = Math.min(start + (long) first * QUERY_BLOCK, model.vocab.length);
+                final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putLong(0, done);
+                channel.write(buffer, NeighborGraph.DONE_POSITION);
+            }
+            listener.update(words, model.vocab.length);
+        }
+    }
+
+    /** Buffers of a thread */
+    private class Block
+    {
+        private final double[] queries = new double[QUERY_BLOCK * layerSize];
+        private final double[] rows = new double[ROW_BLOCK * layerSize];
+        private final double[] scores = new double[ROW_BLOCK];
+        private final List<Top<Edge>> tops = new ArrayList<>(QUERY_BLOCK);
+        private final ByteBuffer records = ByteBuffer
+                .allocateDirect((int) (QUERY_BLOCK * NeighborGraph.recordBytes(k))).order(ByteOrder.LITTLE_ENDIAN);
+
+        Block()
+        {
+            for (int q = 0; q < QUERY_BLOCK; q++)
+                tops.add(new Top<>(Edge.class, k));
+        }
+
+        /** Compute and write the neighbors of the words from, to */
+        void write(FileChannel channel, int from, int to) throws IOException
+        {
+            final DoubleBuffer vectors = model.vectors.duplicate();
+            final int size = to - from;
+            vectors.get(from * layerSize, queries, 0, size * layerSize);
+            for (int q = 0; q < size; q++)
+                tops.get(q).clear();
+            final int vocabSize = model.vocab.length;
+            for (int row = 0; row < vocabSize; row += ROW_BLOCK) {
+                final int rowCount = Math.min(ROW_BLOCK, vocabSize - row);
+                vectors.get(row * layerSize, rows, 0, rowCount * layerSize);
+                for (int q = 0; q < size; q++) {
+                    final Top<Edge> top = tops.get(q);
+                    final int word = from + q;
+                    metric.scores(queries, q * layerSize, rows, rowCount, layerSize, scores);
+                    for (int r = 0; r < rowCount; r++) {
+                        if (row + r == word)
+                            continue;
+                        final double score = scores[r];
+                        if (!top.isInsertable(score))
+                            continue;
+                        top.insert(score).targetId(row + r).score(score);
+                    }
+                }
+            }
+            records.clear();
+            for (int q = 0; q < size; q++) {
+                final Edge[] edges = tops.get(q).length() == 0 ? new Edge[0] : tops.get(q).toArray();
+                final int base = records.position();
+                for (int i = 0; i < k; i++) {
+                    records.putInt(base + i * Integer.BYTES, i < edges.length ? edges[i].targetId() : -1);
+                    records.putFloat(base + k * Integer.BYTES + i * Float.BYTES,
+                            i < edges.length ? (float) metric.value(edges[i].score()) : Float.NaN);
+                }
+                records.position(base + (int) NeighborGraph.recordBytes(k));
+            }
+            records.flip();
+            long position = NeighborGraph.HEADER_BYTES + from * NeighborGraph.recordBytes(k);
+            while (records.hasRemaining())
+                position += channel.write(records, position);
+        }
+    }
+}
@@ -2,7 +2,11 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.DoubleBuffer;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
 
 /**
  * Represents a word2vec model where all the vectors are normalized to unit
@@ -10,39 +14,73 @@
  */
 public class NormalizedWord2VecModel extends VecModel
 {
-    private NormalizedWord2VecModel(String[] vocab, int layerSize, final DoubleBuffer vectors)
+    /** Words of the null vectors, left null */
+    private final List<String> nullWords;
+
+    /**
+     * @param vectors  Vectors of a model, already without values not finite
+     * @param repaired Words of the vectors repaired when the model was loaded
+     */
+    private NormalizedWord2VecModel(String[] vocab, int layerSize, final DoubleBuffer vectors,
+            List<String> repaired)
     {
-        super(vocab, layerSize, vectors);
-        normalize();
+        super(vocab, layerSize, vectors, repaired);
+        nullWords = normalize();
     }
 
     private NormalizedWord2VecModel(String[] vocab, int layerSize, double[] vectors)
     {
         super(vocab, layerSize, vectors);
-        normalize();
+        nullWords = normalize();
     }
 
+    /** @return Model of the normalized vectors of a model, copied, the model is unchanged */
     public static NormalizedWord2VecModel fromWord2VecModel(VecModel model)
     {
-        return new NormalizedWord2VecModel(model.vocab, model.layerSize, model.vectors.duplicate());
+        final int capacity = model.vectors.capacity();
+        final DoubleBuffer vectors = model.vectors.isDirect()
+                ? ByteBuffer.allocateDirect(capacity * Double.BYTES).asDoubleBuffer()
+                : DoubleBuffer.allocate(capacity);
+        vectors.put(model.vectors.duplicate().clear()).clear();
+        return new NormalizedWord2VecModel(model.vocab, model.layerSize, vectors, model.repairedWords());
     }
 
     public static NormalizedWord2VecModel fromBinFile(final File file) throws IOException
     {
-        return fromWord2VecModel(VecModel.fromBinFile(file));
+        final VecModel model = VecModel.fromBinFile(file);
+        return new NormalizedWord2VecModel(model.vocab, model.layerSize, model.vectors, model.repairedWords());
+    }
+
+    /**
+     * @return Words whose vectors are null, they have no direction, left null
+     *         rather than divided by 0, they are not near any other word
+     */
+    public List<String> nullWords()
+    {
+        return nullWords;
     }
 
-    /** Normalizes the vectors in this model */
-    private void normalize()
+    /**
+     * Normalizes the vectors in this model, already without values not finite
+     * 
+     * @return Words of the null vectors
+     */
+    private List<String> normalize()
     {
+        final ImmutableList.Builder<String> words = ImmutableList.builder();
         for (int i = 0; i < vocab.length; ++i) {
             double len = 0;
             for (int j = i * layerSize; j < (i + 1) * layerSize; ++j)
                 len += vectors.get(j) * vectors.get(j);
             len = (double) Math.sqrt(len);
+            if (len == 0) {
+                words.add(vocab[i]);
+                continue;
+            }
 
             for (int j = i * layerSize; j < (i + 1) * layerSize; ++j)
                 vectors.put(j, vectors.get(j) / len);
         }
+        return words.build();
     }
 }
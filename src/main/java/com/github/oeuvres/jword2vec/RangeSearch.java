@@ -0,0 +1,153 @@
+package com.github.oeuvres.jword2vec;
+
+import java.nio.DoubleBuffer;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.github.oeuvres.alix.util.Edge;
+import com.github.oeuvres.jword2vec.util.Kernels;
+import com.github.oeuvres.jword2vec.util.ScoredIds;
+
+/**
+ * Search of all the words with a cosine above a threshold, see
+ * {@link VecSearch#range(double[][], double[])}. A {@link SearchFilter} is
+ * tested before a vector is read.
+ * <p>
+ * The vocabulary is split in chunks searched in parallel, each with its own
+ * growable results. The dot product of a vector is computed on the first half
+ * of its dimensions, then the second half can add at most the product of the
+ * norms of the second halves of the query and of the vector (Cauchy–Schwarz),
+ * computed once: when that bound is under the threshold, the vector is
+ * skipped. With a high threshold, most of the vectors are.
+ */
+class RangeSearch
+{
+    /** Rows of a parallel task */
+    private static final int CHUNK = 4_096;
+    /** Rows loaded together, each compared to all the queries */
+    private static final int ROW_BLOCK = 128;
+
+    private final VecModel model;
+    private final int layerSize;
+    /** Dimensions of the first half */
+    private final int head;
+    /** Norm of each vector */
+    private final double[] norms;
+    /** Norm of the second half of each vector */
+    private final double[] tailNorms;
+
+    RangeSearch(VecModel model)
+    {
+        this.model = model;
+        this.layerSize = model.layerSize;
+        this.head = layerSize / 2;
+        final int vocabSize = model.vocab.length;
+        norms = new double[vocabSize];
+        tailNorms = new double[vocabSize];
+        final DoubleBuffer vectors = model.vectors.duplicate();
+        for (int id = 0; id < vocabSize; id++) {
+            double headSum = 0;
+            double tailSum = 0;
+            for (int i = 0; i < layerSize; i++) {
+                final double x = vectors.get(id * layerSize + i);
+                if (i < head)
+                    headSum += x * x;
+                else
+                    tailSum += x * x;
+            }
+            norms[id] = Math.sqrt(headSum + tailSum);
+            tailNorms[id] = Math.sqrt(tailSum);
+        }
+    }
+
+    /**
+     * @param queries    Vectors of the queries, normalized here
+     * @param thresholds Minimum cosine, by query
+     * @param candidates Count of the first words searched
+     * @param filter     Words compared, null for all
+     * @param excluded   Ids not compared
+     * @return Words of each query with a cosine at least its threshold, from the
+     *         nearest
+     */
+    Edge[][] search(double[][] queries, double[] thresholds, int candidates, SearchFilter filter, int[] excluded)
+    {
+        final int count = queries.length;
+        final double[][] units = new double[count][];
+        final double[] queryTails = new double[count];
+        for (int q = 0; q < count; q++) {
+            final double norm = Math.sqrt(Kernels.get().dot(queries[q], 0, queries[q], 0, layerSize));
+            // no cosine with a null vector
+            if (norm == 0)
+                continue;
+            units[q] = new double[layerSize];
+            for (int i = 0; i < layerSize; i++)
+                units[q][i] = queries[q][i] / norm;
+            queryTails[q] = Math.sqrt(Kernels.get().dot(units[q], head, units[q], head, layerSize - head));
+        }
+        final List<ScoredIds[]> chunks = IntStream.range(0, (candidates + CHUNK - 1) / CHUNK).parallel()
+                .mapToObj(chunk -> scan(chunk * CHUNK, Math.min(candidates, (chunk + 1) * CHUNK), units,
+                        queryTails, thresholds, filter, excluded))
+                .collect(Collectors.toList());
+        final Edge[][] results = new Edge[count][];
+        for (int q = 0; q < count; q++) {
+            final ScoredIds all = new ScoredIds();
+            for (ScoredIds[] chunk : chunks)
+                all.addAll(chunk[q]);
+            results[q] = all.toEdges(model.vocab);
+        }
+        return results;
+    }
+
+    /**
+     * Compare the rows from, to with all the queries, only those accepted by the
+     * filter are read
+     */
+    private ScoredIds[] scan(int from, int to, double[][] units, double[] queryTails, double[] thresholds,
+            SearchFilter filter, int[] excluded)
+    {
+        final Kernels kernels = Kernels.get();
+        final DoubleBuffer vectors = model.vectors.duplicate();
+        final double[] rows = new double[ROW_BLOCK * layerSize];
+        final int[] ids = new int[ROW_BLOCK];
+        final ScoredIds[] results = new ScoredIds[units.length];
+        for (int q = 0; q < units.length; q++)
+            results[q] = new ScoredIds();
+        int next = (filter == null) ? from : filter.next(from, to, excluded);
+        while (next < to) {
+            // ids of the block, and their vectors
+            int rowCount = 0;
+            while (rowCount < ROW_BLOCK && next < to) {
+                ids[rowCount++] = next;
+                next = (filter == null) ? next + 1 : filter.next(next + 1, to, excluded);
+            }
+            if (ids[rowCount - 1] - ids[0] == rowCount - 1) {
+                vectors.get(ids[0] * layerSize, rows, 0, rowCount * layerSize);
+            }
+            else {
+                for (int r = 0; r < rowCount; r++)
+                    vectors.get(ids[r] * layerSize, rows, r * layerSize, layerSize);
+            }
+            for (int q = 0; q < units.length; q++) {
+                final double[] unit = units[q];
+                if (unit == null)
+                    continue;
+                for (int r = 0; r < rowCount; r++) {
+                    final int id = ids[r];
+                    if (norms[id] == 0)
+                        continue;
+                    // cosine ≥ threshold ⇔ dot ≥ threshold × norm
+                    final double min = thresholds[q] * norms[id];
+                    final double dot = kernels.dot(unit, 0, rows, r * layerSize, head);
+                    if (dot + queryTails[q] * tailNorms[id] < min)
+                        continue;
+                    final double score = dot + kernels.dot(unit, head, rows, r * layerSize + head, layerSize - head);
+                    if (score < min)
+                        continue;
+                    results[q].add(id, score / norms[id]);
+                }
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,144 @@
+package com.github.oeuvres.jword2vec;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import com.github.oeuvres.alix.util.Edge;
+import com.google.common.cache.AbstractCache.SimpleStatsCounter;
+import com.google.common.cache.AbstractCache.StatsCounter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Cache of the nearest neighbors of queries of a {@link VecSearch}, see
+ * {@link VecSearch#useCache(long)}, an entry weighs its count of neighbors plus
+ * one. A query is cached with the largest count of neighbors asked, a query of
+ * fewer neighbors takes the first of them.
+ * <p>
+ * A cached result with fewer neighbors than asked, unless there were no more,
+ * is a miss, and is replaced by the larger one, so the statistics are counted
+ * here rather than by the {@link Cache}.
+ */
+class SearchCache
+{
+    private final Cache<Key, Neighbors> cache;
+    private final StatsCounter stats = new SimpleStatsCounter();
+
+    SearchCache(long maxNeighbors)
+    {
+        cache = CacheBuilder.newBuilder().maximumWeight(maxNeighbors)
+                .weigher((Key key, Neighbors value) -> value.ids.length + 1)
+                .<Key, Neighbors>removalListener(notification -> {
+                    if (notification.wasEvicted())
+                        stats.recordEviction();
+                })
+                .build();
+    }
+
+    /**
+     * @param candidates Count of the first words searched
+     * @param filter     Words returned, null for all
+     * @return Key of the words of a query, in order, the mean of their vectors
+     *         does not depend on it
+     */
+    static Key key(String[] words, int candidates, SearchFilter filter)
+    {
+        final String[] sorted = words.clone();
+        Arrays.sort(sorted);
+        return new Key(ImmutableList.copyOf(sorted), candidates, filter);
+    }
+
+    /**
+     * @param vocab Words of the model, by id
+     * @return New edges of the neighbors of a query, null if not cached with at
+     *         least limit neighbors, or all those found
+     */
+    Edge[] get(Key key, int limit, String[] vocab)
+    {
+        final Neighbors neighbors = cache.asMap().get(key);
+        if (neighbors == null || (neighbors.ids.length < limit && !neighbors.complete)) {
+            stats.recordMisses(1);
+            return null;
+        }
+        stats.recordHits(1);
+        final Edge[] edges = new Edge[Math.min(limit, neighbors.ids.length)];
+        for (int i = 0; i < edges.length; i++)
+            edges[i] = new Edge().targetId(neighbors.ids[i]).targetLabel(vocab[neighbors.ids[i]])
+                    .score(neighbors.scores[i]);
+        return edges;
+    }
+
+    /**
+     * Cache the neighbors of a query, unless a larger result has been cached
+     * meanwhile by another thread
+     *
+     * @param limit Count of neighbors asked
+     * @param nanos Time of the search
+     */
+    void put(Key key, Edge[] edges, int limit, long nanos)
+    {
+        final Neighbors neighbors = new Neighbors(edges, edges.length < limit);
+        cache.asMap().merge(key, neighbors,
+                (old, value) -> (old.complete || old.ids.length >= value.ids.length) ? old : value);
+        stats.recordLoadSuccess(nanos);
+    }
+
+    CacheStats stats()
+    {
+        return stats.snapshot();
+    }
+
+    /** Words of a query and the words searched */
+    static final class Key
+    {
+        final List<String> words;
+        final int candidates;
+        final SearchFilter filter;
+
+        Key(List<String> words, int candidates, SearchFilter filter)
+        {
+            this.words = words;
+            this.candidates = candidates;
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key))
+                return false;
+            final Key other = (Key) o;
+            return candidates == other.candidates && words.equals(other.words)
+                    && Objects.equals(filter, other.filter);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(words, candidates, filter);
+        }
+    }
+
+    /** Ids and scores of the neighbors of a query, smaller than edges */
+    private static class Neighbors
+    {
+        final int[] ids;
+        final double[] scores;
+        /** All the words found, fewer than asked */
+        final boolean complete;
+
+        Neighbors(Edge[] edges, boolean complete)
+        {
+            this.complete = complete;
+            ids = new int[edges.length];
+            scores = new double[edges.length];
+            for (int i = 0; i < edges.length; i++) {
+                ids[i] = edges[i].targetId();
+                scores[i] = edges[i].score();
+            }
+        }
+    }
+}
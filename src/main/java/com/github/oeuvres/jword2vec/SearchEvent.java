@@ -0,0 +1,26 @@
+package com.github.oeuvres.jword2vec;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A search of a {@link VecSearch} which records its statistics, in a flight
+ * recording which enables the event, with its duration
+ */
+@Name("com.github.oeuvres.jword2vec.Search")
+@Label("Word2vec Search")
+@Category("Word2vec")
+@Description("Search of the nearest neighbors of words or of a vector")
+final class SearchEvent extends jdk.jfr.Event
+{
+    @Label("Words")
+    String words;
+
+    @Label("Neighbors")
+    int limit;
+
+    @Label("Vectors Scanned")
+    long scanned;
+}
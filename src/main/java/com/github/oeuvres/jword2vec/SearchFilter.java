@@ -0,0 +1,123 @@
+package com.github.oeuvres.jword2vec;
+
+import java.util.BitSet;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Words that a search may return, by id, tested in the scan before the score
+ * is computed, so that a selective filter does not need a larger k. Only the
+ * vectors of the accepted words are read. By default, the words of a query are
+ * not returned.
+ * <p>
+ * A filter is immutable, and equal to a filter of the same words, so that the
+ * cache of a {@link VecSearch} serves it. Any other search of the ids of a
+ * model may use {@link #accepts(int)}.
+ *
+ * @see VecSearch#sims(String[], int, SearchFilter)
+ * @see VecSearch#range(String[], double, SearchFilter)
+ * @see VecSearch#filter(java.util.function.Predicate)
+ */
+public final class SearchFilter
+{
+    private static final SearchFilter ALL = new SearchFilter(null, true);
+
+    /** Ids accepted, null for all */
+    private final BitSet allowed;
+    private final boolean excludeQueryWords;
+    private final int hash;
+
+    private SearchFilter(BitSet allowed, boolean excludeQueryWords)
+    {
+        this.allowed = allowed;
+        this.excludeQueryWords = excludeQueryWords;
+        this.hash = 31 * ((allowed == null) ? 0 : allowed.hashCode()) + (excludeQueryWords ? 1 : 0);
+    }
+
+    /** @return Filter of all the words, except the words of the query */
+    public static SearchFilter all()
+    {
+        return ALL;
+    }
+
+    /**
+     * @param ids Ids of the words accepted, copied
+     * @return Filter of some words, except the words of the query
+     */
+    public static SearchFilter of(BitSet ids)
+    {
+        return new SearchFilter((BitSet) Preconditions.checkNotNull(ids).clone(), true);
+    }
+
+    /** @return The same filter, which also accepts the words of the query */
+    public SearchFilter includeQueryWords()
+    {
+        return new SearchFilter(allowed, false);
+    }
+
+    /** @return true if the words of a query are not returned */
+    public boolean excludesQueryWords()
+    {
+        return excludeQueryWords;
+    }
+
+    /** @return true if the word of an id may be returned, query words aside */
+    public boolean accepts(int id)
+    {
+        return allowed == null || allowed.get(id);
+    }
+
+    /**
+     * @return First id accepted from an id, or end, skipping some ids
+     */
+    int next(int id, int end, int[] excluded)
+    {
+        while (id < end) {
+            if (allowed != null) {
+                id = allowed.nextSetBit(id);
+                if (id < 0 || id >= end)
+                    return end;
+            }
+            if (!contains(excluded, id))
+                return id;
+            id++;
+        }
+        return end;
+    }
+
+    /** @return Count of the ids accepted under an id */
+    int count(int end, int[] excluded)
+    {
+        int count = (allowed == null) ? end : allowed.get(0, end).cardinality();
+        for (int id : excluded)
+            if (id < end && accepts(id))
+                count--;
+        return count;
+    }
+
+    private static boolean contains(int[] ids, int id)
+    {
+        for (int i : ids)
+            if (i == id)
+                return true;
+        return false;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (o == this)
+            return true;
+        if (!(o instanceof SearchFilter))
+            return false;
+        final SearchFilter other = (SearchFilter) o;
+        return hash == other.hash && excludeQueryWords == other.excludeQueryWords
+                && ((allowed == null) ? other.allowed == null : allowed.equals(other.allowed));
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+}
@@ -0,0 +1,179 @@
+package com.github.oeuvres.jword2vec;
+
+import java.util.Arrays;
+
+/**
+ * Statistics of the searches of a {@link VecSearch}, a snapshot taken by
+ * {@link VecSearch#stats()} when {@link VecSearch#recordStats()} is on. Counts
+ * grow from the start of the recording, the difference of two snapshots, see
+ * {@link #minus(SearchStats)}, gives those of a period.
+ * <p>
+ * Latencies are counted in buckets, as HdrHistogram does: each power of 2 of
+ * nanoseconds is split in 8 buckets, so that a percentile is exact within
+ * 12.5%.
+ */
+public final class SearchStats
+{
+    /** Buckets by power of 2 of the latencies, as bits */
+    static final int SUB_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    /** Count of latency buckets, up to the largest long */
+    static final int LATENCY_BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+    /** Count of buckets of k, one by power of 2 */
+    static final int LIMIT_BUCKETS = 32;
+
+    private final long queries;
+    private final long unknownWords;
+    private final long vectorsScanned;
+    private final long totalNanos;
+    private final long maxNanos;
+    private final String slowestQuery;
+    private final long[] latencies;
+    private final long[] limits;
+
+    SearchStats(long queries, long unknownWords, long vectorsScanned, long totalNanos, long maxNanos,
+            String slowestQuery, long[] latencies, long[] limits)
+    {
+        this.queries = queries;
+        this.unknownWords = unknownWords;
+        this.vectorsScanned = vectorsScanned;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.slowestQuery = slowestQuery;
+        this.latencies = latencies;
+        this.limits = limits;
+    }
+
+    /** @return Bucket of a latency */
+    static int latencyBucket(long nanos)
+    {
+        if (nanos < SUB_BUCKETS)
+            return (int) Math.max(nanos, 0);
+        final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        final int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /** @return Largest latency of a bucket */
+    static long latencyUpperBound(int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        final int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        final long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+
+    /** @return Bucket of a count of neighbors asked */
+    static int limitBucket(int k)
+    {
+        return Math.min(31 - Integer.numberOfLeadingZeros(Math.max(k, 1)), LIMIT_BUCKETS - 1);
+    }
+
+    /** @return Count of searches, failed ones included */
+    public long queries()
+    {
+        return queries;
+    }
+
+    /** @return Count of searches failed on an unknown word */
+    public long unknownWords()
+    {
+        return unknownWords;
+    }
+
+    /** @return Count of vectors compared to the queries */
+    public long vectorsScanned()
+    {
+        return vectorsScanned;
+    }
+
+    /** @return Vectors compared by second of search */
+    public double vectorsPerSecond()
+    {
+        return totalNanos == 0 ? 0 : vectorsScanned / (totalNanos / 1e9);
+    }
+
+    /** @return Mean latency of the searches, in nanoseconds */
+    public double meanNanos()
+    {
+        final long count = count();
+        return count == 0 ? 0 : totalNanos / (double) count;
+    }
+
+    /** @return Largest latency since the start of the recording, in nanoseconds */
+    public long maxNanos()
+    {
+        return maxNanos;
+    }
+
+    /** @return Words of the slowest search since the start of the recording, or null */
+    public String slowestQuery()
+    {
+        return slowestQuery;
+    }
+
+    /**
+     * @param percentile From 0 to 100, for example 99 for the 99th percentile
+     * @return Latency under which the given part of the searches are, in
+     *         nanoseconds, 0 if there is none
+     */
+    public long percentileNanos(double percentile)
+    {
+        final long count = count();
+        if (count == 0)
+            return 0;
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < latencies.length; bucket++) {
+            seen += latencies[bucket];
+            if (seen >= rank)
+                return Math.min(latencyUpperBound(bucket), maxNanos);
+        }
+        return maxNanos;
+    }
+
+    /**
+     * @return Count of searches by k asked, k from 2<sup>i</sup> to
+     *         2<sup>i + 1</sup> - 1 at index i
+     */
+    public long[] limits()
+    {
+        return limits.clone();
+    }
+
+    /** @return Count of searches with a latency */
+    private long count()
+    {
+        long count = 0;
+        for (long c : latencies)
+            count += c;
+        return count;
+    }
+
+    /**
+     * @return Counts since another snapshot of the same search, the largest
+     *         latency and the slowest query are those of this one
+     */
+    public SearchStats minus(SearchStats other)
+    {
+        final long[] latencies = new long[this.latencies.length];
+        for (int i = 0; i < latencies.length; i++)
+            latencies[i] = this.latencies[i] - other.latencies[i];
+        final long[] limits = new long[this.limits.length];
+        for (int i = 0; i < limits.length; i++)
+            limits[i] = this.limits[i] - other.limits[i];
+        return new SearchStats(queries - other.queries, unknownWords - other.unknownWords,
+                vectorsScanned - other.vectorsScanned, totalNanos - other.totalNanos, maxNanos, slowestQuery,
+                latencies, limits);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%d queries, %d unknown words, %.0f vectors/s, latency mean %.0f µs, p50 %d µs, "
+                + "p99 %d µs, max %d µs, k by power of 2 %s", queries, unknownWords, vectorsPerSecond(),
+                meanNanos() / 1000, percentileNanos(50) / 1000, percentileNanos(99) / 1000, maxNanos / 1000,
+                Arrays.toString(limits));
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.oeuvres.jword2vec;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the searches of a {@link VecSearch}, updated by concurrent
+ * searches without locks, except for a new slowest search
+ */
+class SearchStatsCounter
+{
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder unknownWords = new LongAdder();
+    private final LongAdder vectorsScanned = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLongArray latencies = new AtomicLongArray(SearchStats.LATENCY_BUCKETS);
+    private final AtomicLongArray limits = new AtomicLongArray(SearchStats.LIMIT_BUCKETS);
+    private volatile long maxNanos;
+    private String slowestQuery;
+
+    /** Record a search failed on an unknown word */
+    void unknownWord()
+    {
+        queries.increment();
+        unknownWords.increment();
+    }
+
+    /**
+     * Record a search
+     * 
+     * @param words Words of the query, or null for a vector
+     */
+    void search(String[] words, int k, long scanned, long nanos)
+    {
+        queries.increment();
+        vectorsScanned.add(scanned);
+        totalNanos.add(nanos);
+        latencies.incrementAndGet(SearchStats.latencyBucket(nanos));
+        limits.incrementAndGet(SearchStats.limitBucket(k));
+        if (nanos > maxNanos) {
+            synchronized (this) {
+                if (nanos > maxNanos) {
+                    maxNanos = nanos;
+                    slowestQuery = words == null ? "vector" : String.join(" ", words);
+                }
+            }
+        }
+    }
+
+    SearchStats snapshot()
+    {
+        final long[] latencies = new long[this.latencies.length()];
+        for (int i = 0; i < latencies.length; i++)
+            latencies[i] = this.latencies.get(i);
+        final long[] limits = new long[this.limits.length()];
+        for (int i = 0; i < limits.length; i++)
+            limits[i] = this.limits.get(i);
+        synchronized (this) {
+            return new SearchStats(queries.sum(), unknownWords.sum(), vectorsScanned.sum(), totalNanos.sum(),
+                    maxNanos, slowestQuery, latencies, limits);
+        }
+    }
+}
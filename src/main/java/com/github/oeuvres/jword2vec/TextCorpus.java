@@ -0,0 +1,216 @@
+package com.github.oeuvres.jword2vec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A tokenized text file, as expected by the C tool: UTF-8, one sentence by
+ * line, tokens separated by white spaces. The file is streamed, never loaded
+ * in memory, and may be read in parallel by byte ranges, each reader skipping
+ * to the beginning of the next line.
+ */
+public class TextCorpus implements Closeable
+{
+    /** Size of the read buffer of a cursor */
+    static final private int BUFFER_BYTES = 1 << 16;
+
+    /** File path */
+    private final Path path;
+    /** Opened read channel */
+    private final FileChannel channel;
+    /** Size of the file in bytes */
+    private final long size;
+
+    private TextCorpus(final Path path) throws IOException
+    {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+    }
+
+    /** Open a text file for training */
+    public static TextCorpus open(final Path path) throws IOException
+    {
+        return new TextCorpus(path);
+    }
+
+    /** @return Path of the file */
+    public Path path()
+    {
+        return path;
+    }
+
+    /** @return Size of the file in bytes */
+    public long size()
+    {
+        return size;
+    }
+
+    /**
+     * Split the file in byte ranges of equal size.
+     *
+     * @param parts count of ranges.
+     * @return parts + 1 offsets, in bytes, starts of ranges and end of the last
+     *         one.
+     */
+    public long[] split(final int parts)
+    {
+        Preconditions.checkArgument(parts > 0, "Value must be positive");
+        final long[] offsets = new long[parts + 1];
+        for (int i = 0; i <= parts; i++) {
+            offsets[i] = size * i / parts;
+        }
+        return offsets;
+    }
+
+    /**
+     * A reader of the lines beginning in [start, end). If start is not the
+     * beginning of a line, the reader skips to the next one. The last line is read
+     * to its end, even after end.
+     */
+    public Cursor cursor(final long start, final long end) throws IOException
+    {
+        return new Cursor(start, end);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    /** @return true for the byte of an ASCII white space */
+    private static boolean isSpace(final byte b)
+    {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+
+    /** Reads lines of tokens from a range of the file. Not thread safe, one cursor by thread. */
+    public class Cursor
+    {
+        /** Read buffer */
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        /** Offset in the file of the next read in the buffer */
+        private long filePosition;
+        /** Offset in the file of the next byte to read */
+        private long position;
+        /** No line will begin at or after this offset */
+        private final long end;
+        /** Bytes of the current line */
+        private byte[] line = new byte[1024];
+        /** Count of bytes of the current line */
+        private int lineLength;
+        /** Tokens of the current line, array may be bigger than length */
+        private String[] tokens = new String[64];
+        /** Count of tokens in the current line */
+        private int length;
+
+        private Cursor(final long start, final long end) throws IOException
+        {
+            Preconditions.checkArgument(start >= 0 && start <= size, "Bad start offset %s", start);
+            this.end = Math.min(end, size);
+            buffer.flip();
+            if (start == 0) {
+                position = filePosition = 0;
+            } else {
+                // the previous byte tells if we are at the start of a line, otherwise go to
+                // the next one
+                position = filePosition = start - 1;
+                if (read() != '\n') {
+                    readLine();
+                }
+            }
+        }
+
+        /** @return Next byte, or -1 at the end of file */
+        private int read() throws IOException
+        {
+            if (!buffer.hasRemaining()) {
+                buffer.clear();
+                final int n = channel.read(buffer, filePosition);
+                buffer.flip();
+                if (n <= 0) {
+                    return -1;
+                }
+                filePosition += n;
+            }
+            position++;
+            return buffer.get() & 0xFF;
+        }
+
+        /** @return false at the end of file */
+        private boolean readLine() throws IOException
+        {
+            lineLength = 0;
+            int b = read();
+            if (b == -1) {
+                return false;
+            }
+            while (b != -1 && b != '\n') {
+                if (lineLength == line.length) {
+                    line = Arrays.copyOf(line, line.length * 2);
+                }
+                line[lineLength++] = (byte) b;
+                b = read();
+            }
+            return true;
+        }
+
+        /**
+         * Read the next line and split it in tokens.
+         *
+         * @return false if there is no more line in the range.
+         */
+        public boolean next() throws IOException
+        {
+            length = 0;
+            if (position >= end || !readLine()) {
+                return false;
+            }
+            int i = 0;
+            while (i < lineLength) {
+                while (i < lineLength && isSpace(line[i])) {
+                    i++;
+                }
+                final int from = i;
+                while (i < lineLength && !isSpace(line[i])) {
+                    i++;
+                }
+                if (i == from) {
+                    break;
+                }
+                if (length == tokens.length) {
+                    tokens = Arrays.copyOf(tokens, tokens.length * 2);
+                }
+                tokens[length++] = new String(line, from, i - from, StandardCharsets.UTF_8);
+            }
+            return true;
+        }
+
+        /** @return Tokens of the current line, valid to {@link #length()} */
+        public String[] tokens()
+        {
+            return tokens;
+        }
+
+        /** @return Count of tokens in the current line */
+        public int length()
+        {
+            return length;
+        }
+
+        /** @return Offset in bytes of the next byte to read */
+        public long position()
+        {
+            return position;
+        }
+    }
+}
@@ -19,6 +19,8 @@
 import java.util.List;
 import java.util.Map;
 
+import com.google.common.collect.ImmutableList;
+
 
 
 /**
@@ -44,6 +46,8 @@
     protected final int layerSize;
     /** File mapped vectors */
     final DoubleBuffer vectors;
+    /** Words of the vectors with values not finite, set to 0 */
+    private final List<String> repaired;
     
     public boolean contains(String word) {
         return word4id.containsKey(word);
@@ -54,6 +58,17 @@ public Integer wordId(String word) {
     }
 
     VecModel(final String[] vocab, int layerSize, DoubleBuffer vectors)
+    {
+        this(vocab, layerSize, vectors, sanitize(vocab, layerSize, vectors));
+    }
+
+    /**
+     * @param vectors  Vectors already without values not finite, those of another
+     *                 model
+     * @param repaired Words of the vectors repaired when the other model was
+     *                 loaded
+     */
+    VecModel(final String[] vocab, int layerSize, DoubleBuffer vectors, List<String> repaired)
     {
         this.vocab = vocab;
         this.layerSize = layerSize;
@@ -62,6 +77,37 @@ public Integer wordId(String word) {
         for (int i = 0; i < vocab.length; i++) {
             word4id.put(vocab[i], i);
         }
+        this.repaired = repaired;
+    }
+
+    /**
+     * Set to 0 the values of the vectors which are not finite, NaN or infinite,
+     * once for all, so that the loops on the vectors need no test
+     * 
+     * @return Words of the vectors repaired
+     */
+    private static List<String> sanitize(final String[] vocab, int layerSize, DoubleBuffer vectors)
+    {
+        final ImmutableList.Builder<String> words = ImmutableList.builder();
+        for (int i = 0; i < vocab.length; i++) {
+            boolean repair = false;
+            for (int j = i * layerSize; j < (i + 1) * layerSize; j++) {
+                if (Double.isFinite(vectors.get(j))) continue;
+                vectors.put(j, 0);
+                repair = true;
+            }
+            if (repair) words.add(vocab[i]);
+        }
+        return words.build();
+    }
+
+    /**
+     * @return Words whose vectors had values not finite, NaN or infinite, from
+     *         a bad file or a training which diverged, set to 0 at loading
+     */
+    public List<String> repairedWords()
+    {
+        return repaired;
     }
 
     VecModel(final String[] vocab, int layerSize, double[] vectors)
@@ -76,12 +122,29 @@ public int layerSize()
         return layerSize;
     }
 
-    /** @return {@link VecSearch} for searching */
+    /** @return {@link VecSearch} for searching, by cosine */
     public VecSearch forSearch()
     {
         return new VecSearch(this);
     }
 
+    /**
+     * @param metric Comparison of the vectors, the vectors of this model are
+     *               searched as they are, except for the cosine, which searches
+     *               a normalized copy
+     * @return {@link VecSearch} for searching
+     */
+    public VecSearch forSearch(Metric metric)
+    {
+        return new VecSearch(this, metric);
+    }
+
+    /** @return {@link DocumentEmbedder} for the vectors of documents, from the vectors of this model */
+    public DocumentEmbedder embedder()
+    {
+        return new DocumentEmbedder(this);
+    }
+
 
     /**
      * Forwards to {@link #fromBinFile(File, ByteOrder, ProfilingTimer)} with the
@@ -2,52 +2,174 @@
 
 import com.github.oeuvres.alix.util.Edge;
 import com.github.oeuvres.alix.util.Top;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Multiset;
 
 import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
 
 /** Provides search functionality */
 public class VecSearch
 {
-    private final NormalizedWord2VecModel model;
+    /** Rows of the model loaded together, each compared to all the queries */
+    private static final int ROW_BLOCK = 128;
+    private static final int[] NO_IDS = new int[0];
+    /** Vectors searched, normalized for the cosine */
+    private final VecModel model;
+    private final Metric metric;
+    /** Statistics of the searches, null when not recorded */
+    private volatile SearchStatsCounter stats;
+    /** Cache of the neighbors of the queries of words, null without */
+    private volatile SearchCache cache;
+    /** Count of the first words searched, the most frequent */
+    private volatile int candidates;
+    /** Norms for the range searches, computed at the first one */
+    private volatile RangeSearch range;
 
-    VecSearch(final NormalizedWord2VecModel model)
+    VecSearch(final VecModel model, final Metric metric)
     {
-        this.model = model;
-
+        if (metric.normalized && !(model instanceof NormalizedWord2VecModel))
+            this.model = NormalizedWord2VecModel.fromWord2VecModel(model);
+        else
+            this.model = model;
+        this.metric = metric;
+        this.candidates = model.vocab.length;
     }
 
     VecSearch(final VecModel model)
     {
-        this(NormalizedWord2VecModel.fromWord2VecModel(model));
+        this(model, Metric.COSINE);
     }
 
-    /** @return true if a word is inside the model's vocabulary. */
-    public boolean contains(String word)
+    /** @return Comparison of the vectors */
+    public Metric metric()
     {
-        return model.contains(word);
+        return metric;
     }
 
-    @SuppressWarnings("unused")
-    private double cosine(double[] vec1, double[] vec2)
+    /**
+     * @return {@link DocumentEmbedder} for the vectors of documents, from the
+     *         vectors of the words compared by {@link #sims(double[], int)},
+     *         normalized for the cosine
+     */
+    public DocumentEmbedder embedder()
     {
-        double d = 0;
-        for (int a = 0; a < model.layerSize; a++) {
-            // NaN bug in loading
-            if (Double.isNaN(vec1[a]) || Double.isNaN(vec2[a]))
-                continue;
-            d += vec2[a] * vec1[a];
-        }
-        return d;
+        return new DocumentEmbedder(model);
     }
 
-    @SuppressWarnings("unused")
-    private double[] difference(double[] vec1, double[] vec2)
+    /**
+     * Record the statistics of the searches of this instance, from now on: their
+     * latencies, the vectors compared, the unknown words, the k asked. Each
+     * search is also a {@link jdk.jfr.Event} “com.github.oeuvres.jword2vec.Search”
+     * in the flight recordings which enable it. A search without recording
+     * costs a null check. Threads calling this method at once share the same
+     * statistics.
+     */
+    public synchronized VecSearch recordStats()
     {
-        double[] diff = new double[model.layerSize];
-        for (int p = 0; p < model.layerSize; p++) {
-            diff[p] = vec1[p] - vec2[p];
-        }
-        return diff;
+        if (stats == null)
+            stats = new SearchStatsCounter();
+        return this;
+    }
+
+    /**
+     * @return Snapshot of the statistics since {@link #recordStats()}, to poll,
+     *         empty if they are not recorded
+     */
+    public SearchStats stats()
+    {
+        final SearchStatsCounter stats = this.stats;
+        return stats == null ? new SearchStatsCounter().snapshot() : stats.snapshot();
+    }
+
+    /**
+     * Search only the first words of the model, the most frequent ones when the
+     * vocabulary is sorted by frequency as by the training and the C tool, as
+     * the <code>threshold</code> of its <code>distance</code>. The searches are
+     * faster in proportion, and skip the rare words, often noise. Query words
+     * are taken from all the vocabulary.
+     * <p>
+     * Applies to {@link #sims(double[], int)}, {@link #sims(String[], int)},
+     * {@link #sims(double[][], int)} and the range searches.
+     *
+     * @param maxWords Count of words searched, all of them beyond the
+     *                 vocabulary
+     */
+    public VecSearch restrictTo(int maxWords)
+    {
+        Preconditions.checkArgument(maxWords > 0, "Value must be positive");
+        candidates = Math.min(maxWords, model.vocab.length);
+        return this;
+    }
+
+    /**
+     * Search only the first words of the model with a count in the corpus at
+     * least a minimum, see {@link #restrictTo(int)}. The search stops at the
+     * first word under the minimum, the vocabulary sorted by frequency.
+     *
+     * @param counts   Counts of the words in the corpus
+     * @param minCount Minimum count of the words searched
+     */
+    public VecSearch restrictTo(Multiset<String> counts, long minCount)
+    {
+        int maxWords = 0;
+        while (maxWords < model.vocab.length && counts.count(model.vocab[maxWords]) >= minCount)
+            maxWords++;
+        return restrictTo(Math.max(maxWords, 1));
+    }
+
+    /** @return Count of the first words of the model searched */
+    public int candidates()
+    {
+        return candidates;
+    }
+
+    /**
+     * Cache the neighbors of the queries of words, {@link #sims(String[], int)},
+     * shared by all the threads, replacing the previous cache. A query is cached
+     * with the largest k asked, smaller k are served from it. The words of a
+     * query are in any order.
+     *
+     * @param maxNeighbors Count of neighbors cached for all the queries, the
+     *                     least recently used queries are evicted beyond
+     */
+    public VecSearch useCache(long maxNeighbors)
+    {
+        Preconditions.checkArgument(maxNeighbors > 0, "Value must be positive");
+        cache = new SearchCache(maxNeighbors);
+        return this;
+    }
+
+    /**
+     * @return Hits, misses and evictions of the cache since
+     *         {@link #useCache(long)}, empty without cache
+     */
+    public CacheStats cacheStats()
+    {
+        final SearchCache cache = this.cache;
+        return cache == null ? new CacheStats(0, 0, 0, 0, 0, 0) : cache.stats();
+    }
+
+    /**
+     * @param k Count of neighbors by word
+     * @return {@link NeighborGraphWriter} of the k nearest neighbors of all the
+     *         words, by the same metric as {@link #sims(double[], int)}
+     */
+    public NeighborGraphWriter graphWriter(int k)
+    {
+        return new NeighborGraphWriter(model, metric, k);
+    }
+
+    /** @return true if a word is inside the model's vocabulary. */
+    public boolean contains(String word)
+    {
+        return model.contains(word);
     }
 
     /**
@@ -56,18 +178,13 @@ private double[] difference(double[] vec1, double[] vec2)
     private double[] mean(double[][] vectors)
     {
         double[] mean = new double[model.layerSize];
-        for (int p = 0; p < model.layerSize; p++) {
-            double sum = 0;
-            int card = 0;
-            for (int v = 0; v < vectors.length; v++) {
-                // skip NaN (infinity ?)
-                if (Double.isNaN(vectors[v][p]))
-                    continue;
-                sum += vectors[v][p];
-                card++;
+        for (int v = 0; v < vectors.length; v++) {
+            for (int p = 0; p < model.layerSize; p++) {
+                mean[p] += vectors[v][p];
             }
-            if (card == 0) continue;
-            mean[p] = sum / card;
+        }
+        for (int p = 0; p < model.layerSize; p++) {
+            mean[p] /= vectors.length;
         }
         return mean;
     }
@@ -81,22 +198,64 @@ private double[] mean(double[][] vectors)
      */
     public Edge[] sims(final String[] words, final int limit) throws UnknownWordException
     {
-        double[] query;
+        return sims(words, limit, null);
+    }
+
+    /**
+     * Closest words of the mean of some words, among the words accepted by a
+     * filter, tested before the vectors are compared
+     *
+     * @param filter Words returned, the query words excluded by default, null
+     *               for all the words, the query words included
+     * @return Words, from the nearest, fewer than limit if the filter does not
+     *         accept enough words
+     */
+    public Edge[] sims(final String[] words, final int limit, final SearchFilter filter)
+            throws UnknownWordException
+    {
         if (words.length == 0) {
             return null;
         }
-        else if (words.length == 1) {
-            query = vector(words[0]);
+        final int candidates = this.candidates;
+        final SearchCache cache = this.cache;
+        if (cache == null) {
+            return search(query(words), limit, words, candidates, filter);
+        }
+        final long start = System.nanoTime();
+        final SearchCache.Key key = SearchCache.key(words, candidates, filter);
+        Edge[] edges = cache.get(key, limit, model.vocab);
+        if (edges != null) {
+            final SearchStatsCounter stats = this.stats;
+            if (stats != null)
+                stats.search(words, limit, 0, System.nanoTime() - start);
+            return edges;
         }
-        else {
+        edges = search(query(words), limit, words, candidates, filter);
+        cache.put(key, edges, limit, System.nanoTime() - start);
+        return edges;
+    }
+
+    /**
+     * @return Vector of a query, the mean of the vectors of its words
+     */
+    private double[] query(final String[] words) throws UnknownWordException
+    {
+        try {
+            if (words.length == 1) {
+                return vector(words[0]);
+            }
             double[][] vectors = new double[words.length][];
             for (int v = 0; v < words.length; v++) {
                 vectors[v] = vector(words[v]);
             }
-            query = mean(vectors);
+            return mean(vectors);
+        }
+        catch (UnknownWordException e) {
+            final SearchStatsCounter stats = this.stats;
+            if (stats != null)
+                stats.unknownWord();
+            throw e;
         }
-        Edge[] edges = sims(query, limit);
-        return edges;
     }
 
     /**
@@ -108,38 +267,270 @@ else if (words.length == 1) {
      */
     public Edge[] sims(final double[] vec, int limit) 
     {
-        // the top collector
-        Top<Edge> top = new Top<>(Edge.class, limit);
-        if (vec == null) {
-            throw new IllegalArgumentException("Reference vector is required");
+        return search(vec, limit, null, candidates, null);
+    }
+
+    /**
+     * Closest words of a vector, among the words accepted by a filter, tested
+     * before the vectors are compared
+     *
+     * @param filter Words returned, null for all
+     */
+    public Edge[] sims(final double[] vec, final int limit, final SearchFilter filter)
+    {
+        return search(vec, limit, null, candidates, filter);
+    }
+
+    /**
+     * Closest words of several vectors, in one pass on the vectors of the model,
+     * each loaded once for all the queries
+     *
+     * @param vecs  Vectors of the queries
+     * @param limit Count of words by query
+     * @return Words of each query, as {@link #sims(double[], int)}
+     */
+    public Edge[][] sims(final double[][] vecs, final int limit)
+    {
+        return sims(vecs, limit, null);
+    }
+
+    /**
+     * Closest words of several vectors, among the words accepted by a filter, see
+     * {@link #sims(double[][], int)}
+     *
+     * @param filter Words returned, null for all
+     */
+    public Edge[][] sims(final double[][] vecs, final int limit, final SearchFilter filter)
+    {
+        return scan(vecs, limit, candidates, filter, NO_IDS);
+    }
+
+    /**
+     * @param predicate Words accepted
+     * @return Filter of the words of the model accepted by a predicate, tested
+     *         once here
+     */
+    public SearchFilter filter(final Predicate<String> predicate)
+    {
+        final BitSet ids = new BitSet(model.vocab.length);
+        for (int id = 0; id < model.vocab.length; id++) {
+            if (predicate.test(model.vocab[id])) ids.set(id);
         }
-        if (vec.length != model.layerSize) {
-            throw new IllegalArgumentException(String.format("vec.length=%d != model.layerSize=%d, bad vector", vec.length, model.layerSize));
+        return SearchFilter.of(ids);
+    }
+
+    /**
+     * Search, recorded in the statistics if they are on
+     * 
+     * @param words      Words of the query, null for a vector
+     * @param candidates Count of the first words searched
+     * @param filter     Words returned, null for all
+     */
+    private Edge[] search(final double[] vec, final int limit, final String[] words, final int candidates,
+            final SearchFilter filter)
+    {
+        final int[] excluded = (filter == null || words == null || !filter.excludesQueryWords()) ? NO_IDS
+                : ids(words);
+        final SearchStatsCounter stats = this.stats;
+        if (stats == null)
+            return scan(new double[][] { vec }, limit, candidates, filter, excluded)[0];
+        final SearchEvent event = new SearchEvent();
+        event.begin();
+        final long start = System.nanoTime();
+        final Edge[] edges = scan(new double[][] { vec }, limit, candidates, filter, excluded)[0];
+        final long nanos = System.nanoTime() - start;
+        event.end();
+        final int scanned = (filter == null) ? candidates : filter.count(candidates, excluded);
+        stats.search(words, limit, scanned, nanos);
+        if (event.shouldCommit()) {
+            event.words = (words == null) ? null : String.join(" ", words);
+            event.limit = limit;
+            event.scanned = scanned;
+            event.commit();
         }
-        // ensure source vector has no NaN
-        for(int node = 0; node < model.layerSize; node ++) {
-            if (Double.isNaN(vec[node])) vec[node] = 0;
+        return edges;
+    }
+
+    /** @return Distinct ids of known words */
+    private int[] ids(final String[] words)
+    {
+        return Arrays.stream(words).map(model::wordId).filter(Objects::nonNull).mapToInt(Integer::intValue)
+                .distinct().toArray();
+    }
+
+    /**
+     * Compare vectors to those of the first words of the model, by blocks of
+     * rows, each compared to all the vectors. Only the rows accepted by the
+     * filter are read.
+     * 
+     * @param candidates Count of the first words compared
+     * @param filter     Words compared, null for all
+     * @param excluded   Ids not compared
+     */
+    private Edge[][] scan(final double[][] vecs, final int limit, final int candidates, final SearchFilter filter,
+            final int[] excluded)
+    {
+        final int layerSize = model.layerSize;
+        // the top collectors
+        final List<Top<Edge>> tops = new ArrayList<>(vecs.length);
+        for (double[] vec : vecs) {
+            if (vec == null) {
+                throw new IllegalArgumentException("Reference vector is required");
+            }
+            if (vec.length != layerSize) {
+                throw new IllegalArgumentException(String.format("vec.length=%d != model.layerSize=%d, bad vector", vec.length, layerSize));
+            }
+            // the vectors of the model are finite, see VecModel#repairedWords()
+            for (int node = 0; node < layerSize; node++) {
+                if (!Double.isFinite(vec[node])) {
+                    throw new IllegalArgumentException(String.format("vec[%d]=%s, bad vector", node, vec[node]));
+                }
+            }
+            tops.add(new Top<>(Edge.class, limit));
         }
         final DoubleBuffer vectors = model.vectors.duplicate();
-        for (int wordId = 0; wordId < model.vocab.length; wordId++) {
-            // calculate cosine distance
-            double score = 0;
-            for(int node = 0; node < model.layerSize; node ++) {
-                final double d2 = vectors.get();
-                if (Double.isNaN(d2)) continue;
-                score += vec[node] * d2; // cosine
-                // score += Math.abs(vec[node] - d2); // manhattan, no acuracy
-                // final double diff = vec[node] - d2; score += diff*diff; // euclidian
+        final double[] rows = new double[Math.min(ROW_BLOCK, Math.max(candidates, 1)) * layerSize];
+        final double[] scores = new double[ROW_BLOCK];
+        final int[] ids = new int[ROW_BLOCK];
+        int id = (filter == null) ? 0 : filter.next(0, candidates, excluded);
+        while (id < candidates) {
+            // ids of the block, and their vectors
+            int rowCount = 0;
+            while (rowCount < ROW_BLOCK && id < candidates) {
+                ids[rowCount++] = id;
+                id = (filter == null) ? id + 1 : filter.next(id + 1, candidates, excluded);
+            }
+            if (ids[rowCount - 1] - ids[0] == rowCount - 1) {
+                vectors.get(ids[0] * layerSize, rows, 0, rowCount * layerSize);
+            }
+            else {
+                for (int r = 0; r < rowCount; r++) {
+                    vectors.get(ids[r] * layerSize, rows, r * layerSize, layerSize);
+                }
+            }
+            for (int q = 0; q < vecs.length; q++) {
+                final Top<Edge> top = tops.get(q);
+                metric.scores(vecs[q], 0, rows, rowCount, layerSize, scores);
+                for (int r = 0; r < rowCount; r++) {
+                    final double score = scores[r];
+                    if (!top.isInsertable(score)) continue;
+                    top.insert(score).targetId(ids[r]).score(score);
+                }
             }
-            // score = Math.sqrt(score); // euclidian
-            if (!top.isInsertable(score)) continue;
-            top.insert(score).targetId(wordId).score(score);
         }
-        Edge[] edges = top.toArray();
-        for (int i = 0; i < edges.length; i++) {
-            edges[i].targetLabel(model.vocab[edges[i].targetId()]);
+        final Edge[][] results = new Edge[vecs.length][];
+        for (int q = 0; q < vecs.length; q++) {
+            final Top<Edge> top = tops.get(q);
+            final Edge[] edges = (top.length() == 0) ? new Edge[0] : top.toArray();
+            for (int i = 0; i < edges.length; i++) {
+                edges[i].targetLabel(model.vocab[edges[i].targetId()]).score(metric.value(edges[i].score()));
+            }
+            results[q] = edges;
         }
-        return edges;
+        return results;
+    }
+
+    /**
+     * All the words with a cosine to the mean of the vectors of some words at
+     * least a threshold, see {@link #range(double[][], double[])}
+     *
+     * @return Words, from the nearest, the query words included
+     */
+    public Edge[] range(final String[] words, final double threshold) throws UnknownWordException
+    {
+        return range(words, threshold, null);
+    }
+
+    /**
+     * All the words accepted by a filter with a cosine to the mean of the vectors
+     * of some words at least a threshold, see {@link #range(double[][], double[])}
+     *
+     * @param filter Words returned, the query words excluded by default, null
+     *               for all the words, the query words included
+     * @return Words, from the nearest
+     */
+    public Edge[] range(final String[] words, final double threshold, final SearchFilter filter)
+            throws UnknownWordException
+    {
+        Preconditions.checkArgument(words.length > 0, "No word to search");
+        final int[] excluded = (filter == null || !filter.excludesQueryWords()) ? NO_IDS : ids(words);
+        return range(new double[][] { query(words) }, new double[] { threshold }, filter, excluded)[0];
+    }
+
+    /**
+     * All the words with a cosine to a vector at least a threshold, see
+     * {@link #range(double[][], double[])}
+     *
+     * @return Words, from the nearest
+     */
+    public Edge[] range(final double[] vec, final double threshold)
+    {
+        return range(vec, threshold, null);
+    }
+
+    /**
+     * All the words accepted by a filter with a cosine to a vector at least a
+     * threshold, see {@link #range(double[][], double[])}
+     *
+     * @param filter Words returned, null for all
+     * @return Words, from the nearest
+     */
+    public Edge[] range(final double[] vec, final double threshold, final SearchFilter filter)
+    {
+        return range(new double[][] { vec }, new double[] { threshold }, filter)[0];
+    }
+
+    /**
+     * All the words with a cosine to each vector at least its threshold, in one
+     * pass on the vectors of the model, without limit of count. Scores are
+     * cosines, whatever the {@link Metric} of the search, unlike
+     * {@link #sims(double[], int)} where the query vector is not normalized. A
+     * null vector has no result. The norms of the model are computed at the
+     * first call.
+     *
+     * @param vecs       Vectors of the queries
+     * @param thresholds Minimum cosine of each query, from -1 to 1
+     * @return Words of each query, from the nearest
+     */
+    public Edge[][] range(final double[][] vecs, final double[] thresholds)
+    {
+        return range(vecs, thresholds, null);
+    }
+
+    /**
+     * All the words accepted by a filter with a cosine to each vector at least
+     * its threshold, see {@link #range(double[][], double[])}. The filter is
+     * tested before the vectors are compared, only the accepted vectors are read.
+     *
+     * @param filter Words returned, null for all
+     * @return Words of each query, from the nearest
+     */
+    public Edge[][] range(final double[][] vecs, final double[] thresholds, final SearchFilter filter)
+    {
+        return range(vecs, thresholds, filter, NO_IDS);
+    }
+
+    /**
+     * @param filter   Words returned, null for all
+     * @param excluded Ids not compared, those of the query words
+     */
+    private Edge[][] range(final double[][] vecs, final double[] thresholds, final SearchFilter filter,
+            final int[] excluded)
+    {
+        Preconditions.checkArgument(vecs.length == thresholds.length, "%s queries for %s thresholds", vecs.length,
+                thresholds.length);
+        for (double[] vec : vecs) {
+            Preconditions.checkArgument(vec.length == model.layerSize, "vec.length=%s != model.layerSize=%s",
+                    vec.length, model.layerSize);
+            for (double x : vec)
+                Preconditions.checkArgument(Double.isFinite(x), "Value not finite in vector: %s", x);
+        }
+        RangeSearch range = this.range;
+        if (range == null) {
+            range = new RangeSearch(model);
+            this.range = range;
+        }
+        return range.search(vecs, thresholds, candidates, filter, excluded);
     }
 
     private double[] vector(final String word) throws UnknownWordException
@@ -1,85 +1,355 @@
 package com.github.oeuvres.jword2vec;
 
-import com.github.oeuvres.jword2vec.HuffmanCoding.HuffmanNode;
+import com.github.oeuvres.jword2vec.HuffmanCoding.Codes;
 import com.github.oeuvres.jword2vec.VecTrainerBuilder.TrainingProgressListener;
 import com.github.oeuvres.jword2vec.VecTrainerBuilder.TrainingProgressListener.Stage;
+import com.github.oeuvres.jword2vec.neuralnetwork.Checkpoint;
 import com.github.oeuvres.jword2vec.neuralnetwork.NeuralNetworkConfig;
+import com.github.oeuvres.jword2vec.neuralnetwork.NeuralNetworkTrainer;
 import com.github.oeuvres.jword2vec.neuralnetwork.NeuralNetworkTrainer.NeuralNetworkModel;
+import com.github.oeuvres.jword2vec.neuralnetwork.ParameterTransport;
+import com.github.oeuvres.jword2vec.neuralnetwork.TrainingMonitor;
 import com.google.common.base.Optional;
-import com.google.common.base.Predicate;
-import com.google.common.collect.HashMultiset;
-import com.google.common.collect.ImmutableMultiset;
-import com.google.common.collect.ImmutableSortedMultiset;
-import com.google.common.collect.Iterables;
+import com.github.oeuvres.jword2vec.util.CallableVoid;
 import com.google.common.collect.Multiset;
-import com.google.common.collect.Multisets;
 import com.google.common.primitives.Doubles;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /** Responsible for training a word2vec model */
 class VecTrainer
 {
+    /** Count of sentences pulled at once from a shared iterator by a counting thread */
+    private static final int BATCH_SIZE = 256;
+    /** Frequency of progress updates while counting a text file, in bytes */
+    private static final long PROGRESS_BYTES = 1 << 22;
     private final int minFrequency;
+    private final int maxVocabSize;
+    private final int numThreads;
     private final Optional<Multiset<String>> vocab;
     private final NeuralNetworkConfig neuralNetworkConfig;
+    private final Optional<Path> checkpoints;
+    private final long checkpointMillis;
+    private final boolean resume;
+    /** Model to train again */
+    private final Optional<VecModel> previousModel;
+    /** Directory of the final checkpoint of a training to train again */
+    private final Optional<Path> previousCheckpoints;
+    /** Final checkpoint of the previous training, read once */
+    private Checkpoint previousCheckpoint;
+    /** Connection to the other processes of a distributed training */
+    private final Optional<ParameterTransport> transport;
+    private final long averageMillis;
 
-    VecTrainer(Integer minFrequency, Optional<Multiset<String>> vocab, NeuralNetworkConfig neuralNetworkConfig)
+    /**
+     * @param builder             Settings of the training, with their defaults
+     * @param neuralNetworkConfig Settings of the network
+     */
+    VecTrainer(VecTrainerBuilder builder, NeuralNetworkConfig neuralNetworkConfig)
     {
-        this.vocab = vocab;
-        this.minFrequency = minFrequency;
+        this.minFrequency = builder.minFrequency;
+        this.maxVocabSize = builder.maxVocabSize;
+        this.numThreads = builder.numThreads;
+        this.vocab = Optional.fromNullable(builder.vocab);
         this.neuralNetworkConfig = neuralNetworkConfig;
+        this.checkpoints = Optional.fromNullable(builder.checkpoints);
+        this.checkpointMillis = builder.checkpointMillis;
+        this.resume = builder.resume;
+        this.previousModel = Optional.fromNullable(builder.previousModel);
+        this.previousCheckpoints = Optional.fromNullable(builder.previousCheckpoints);
+        this.transport = Optional.fromNullable(builder.transport);
+        this.averageMillis = builder.averageMillis;
     }
 
-    /** @return {@link Multiset} containing unique tokens and their counts */
-    private static Multiset<String> count(Iterable<String> tokens)
+    /**
+     * Count words and sentences in parallel, each thread pulling batches of
+     * sentences from the shared iterator into its own table.
+     * 
+     * @param numSentences Count of sentences if known, for progress, or -1
+     * @param words        false to count only the sentences
+     * @return Counts of words and sentences
+     */
+    private WordCounts count(final TrainingProgressListener listener, final Iterator<List<String>> sentences,
+            final long numSentences, final boolean words) throws InterruptedException
     {
-        Multiset<String> counts = HashMultiset.create();
-        for (String token : tokens)
-            counts.add(token);
-        return counts;
+        final AtomicLong done = new AtomicLong();
+        List<WordCounts> tables = new ArrayList<>();
+        List<CallableVoid> tasks = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            final WordCounts counts = new WordCounts(threadVocabSize());
+            tables.add(counts);
+            tasks.add(new CallableVoid()
+            {
+                @Override
+                protected void run() throws InterruptedException
+                {
+                    final List<List<String>> batch = new ArrayList<>(BATCH_SIZE);
+                    while (true) {
+                        batch.clear();
+                        synchronized (sentences) {
+                            while (batch.size() < BATCH_SIZE && sentences.hasNext())
+                                batch.add(sentences.next());
+                        }
+                        if (batch.isEmpty())
+                            return;
+                        if (Thread.currentThread().isInterrupted())
+                            throw new InterruptedException("Interrupted while counting vocabulary");
+                        for (List<String> sentence : batch) {
+                            counts.sentence();
+                            if (!words)
+                                continue;
+                            for (String word : sentence)
+                                counts.add(word);
+                        }
+                        final long total = done.addAndGet(batch.size());
+                        if (numSentences > 0 && total % (BATCH_SIZE * 64) < BATCH_SIZE)
+                            listener.update(Stage.ACQUIRE_VOCAB, total / (double) numSentences);
+                    }
+                }
+            });
+        }
+        return merge(listener, tables, tasks);
     }
 
     /**
-     * @return Tokens with their count, sorted by frequency decreasing, then
-     *         lexicographically ascending
+     * Count words and sentences in parallel, each thread reading its own range of
+     * the file into its own table.
+     * 
+     * @param words false to count only the sentences
+     * @return Counts of words and sentences
      */
-    private ImmutableMultiset<String> filterAndSort(final Multiset<String> counts)
+    private WordCounts count(final TrainingProgressListener listener, final TextCorpus corpus, final boolean words)
+            throws InterruptedException, IOException
     {
-        // This isn't terribly efficient, but it is deterministic
-        // Unfortunately, Guava's multiset doesn't give us a clean way to order both by
-        // count and element
-        return Multisets
-                .copyHighestCountFirst(ImmutableSortedMultiset.copyOf(Multisets.filter(counts, new Predicate<String>()
+        final AtomicLong done = new AtomicLong();
+        final long[] offsets = corpus.split(numThreads);
+        List<WordCounts> tables = new ArrayList<>();
+        List<CallableVoid> tasks = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            final WordCounts counts = new WordCounts(threadVocabSize());
+            final TextCorpus.Cursor cursor = corpus.cursor(offsets[i], offsets[i + 1]);
+            final long start = offsets[i];
+            tables.add(counts);
+            tasks.add(new CallableVoid()
+            {
+                @Override
+                protected void run() throws InterruptedException, IOException
                 {
-                    @Override
-                    public boolean apply(String s)
-                    {
-                        return counts.count(s) >= minFrequency;
+                    long last = start;
+                    while (cursor.next()) {
+                        counts.sentence();
+                        if (words) {
+                            final String[] tokens = cursor.tokens();
+                            for (int i = 0, n = cursor.length(); i < n; i++)
+                                counts.add(tokens[i]);
+                        }
+                        if (cursor.position() - last > PROGRESS_BYTES) {
+                            if (Thread.currentThread().isInterrupted())
+                                throw new InterruptedException("Interrupted while counting vocabulary");
+                            final long total = done.addAndGet(cursor.position() - last);
+                            last = cursor.position();
+                            listener.update(Stage.ACQUIRE_VOCAB, total / (double) (corpus.size() + 1));
+                        }
                     }
-                })));
+                }
+            });
+        }
+        return merge(listener, tables, tasks);
+    }
 
+    /**
+     * @return Maximum count of distinct words of the table of a counting thread,
+     *         a share of the limit, so that all the tables hold no more words
+     */
+    private int threadVocabSize()
+    {
+        return Math.max(1, maxVocabSize / numThreads);
+    }
+
+    /** Run the counting tasks, and merge their tables */
+    private WordCounts merge(TrainingProgressListener listener, List<WordCounts> tables, List<CallableVoid> tasks)
+            throws InterruptedException
+    {
+        ExecutorService ex = Executors.newFixedThreadPool(numThreads);
+        try {
+            for (Future<Void> future : ex.invokeAll(tasks))
+                future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error counting vocabulary", e.getCause());
+        } finally {
+            ex.shutdownNow();
+        }
+        final WordCounts counts = tables.get(0);
+        counts.maxSize(maxVocabSize);
+        for (int i = 1; i < tables.size(); i++) {
+            counts.merge(tables.get(i));
+            tables.set(i, null);
+        }
+        listener.update(Stage.ACQUIRE_VOCAB, 1.0);
+        return counts;
     }
 
     /** Train a model using the given data */
-    VecModel train(TrainingProgressListener listener, Iterable<List<String>> sentences)
+    VecModel train(TrainingMonitor listener, Iterable<List<String>> sentences)
+            throws InterruptedException
+    {
+        listener.update(Stage.ACQUIRE_VOCAB, 0.0);
+        final Checkpoint checkpoint = checkpoint();
+        if (checkpoint != null)
+            return model(checkpoint.vocab(), trainer(listener, checkpoint.vocab(), checkpoint).train(sentences, 0));
+        final long size = (sentences instanceof Collection) ? ((Collection<?>) sentences).size() : -1;
+        final WordCounts wordCounts = count(listener, sentences.iterator(), size, !vocab.isPresent());
+        final Vocab vocab = vocab(listener, wordCounts);
+        final NeuralNetworkModel model = trainer(listener, vocab, null).train(sentences, wordCounts.sentences());
+        return model(vocab, model);
+    }
+
+    /** Train a model from a binary corpus file, vocabulary is read from the file */
+    VecModel train(TrainingMonitor listener, CorpusFile corpus) throws InterruptedException
+    {
+        listener.update(Stage.ACQUIRE_VOCAB, 0.0);
+        final Checkpoint checkpoint = checkpoint();
+        if (checkpoint != null)
+            return model(checkpoint.vocab(), trainer(listener, checkpoint.vocab(), checkpoint).train(corpus));
+        listener.update(Stage.FILTER_SORT_VOCAB, 0.0);
+        final Vocab vocab = (this.vocab.isPresent()) ? Vocab.sort(this.vocab.get(), minFrequency)
+                : corpus.vocab(minFrequency, previousWords());
+        final NeuralNetworkModel model = trainer(listener, vocab, null).train(corpus);
+        return model(vocab, model);
+    }
+
+    /**
+     * Train a model from a stream of sentences, opened once for the vocabulary,
+     * and again for each iteration
+     */
+    VecModel train(TrainingMonitor listener, Supplier<? extends Stream<List<String>>> sentences)
             throws InterruptedException
     {
-        final Multiset<String> counts;
+        listener.update(Stage.ACQUIRE_VOCAB, 0.0);
+        final Checkpoint checkpoint = checkpoint();
+        if (checkpoint != null)
+            return model(checkpoint.vocab(), trainer(listener, checkpoint.vocab(), checkpoint).train(sentences, 0));
+        final WordCounts wordCounts;
+        try (Stream<List<String>> stream = sentences.get()) {
+            wordCounts = count(listener, stream.iterator(), -1, !vocab.isPresent());
+        }
+        final Vocab vocab = vocab(listener, wordCounts);
+        final NeuralNetworkModel model = trainer(listener, vocab, null).train(sentences, wordCounts.sentences());
+        return model(vocab, model);
+    }
 
+    /**
+     * Train a model from a text file, read once for the vocabulary, and again for
+     * each iteration
+     */
+    VecModel train(TrainingMonitor listener, TextCorpus corpus) throws InterruptedException, IOException
+    {
         listener.update(Stage.ACQUIRE_VOCAB, 0.0);
-        counts = (vocab.isPresent()) ? vocab.get() : count(Iterables.concat(sentences));
-        final ImmutableMultiset<String> vocab;
+        final Checkpoint checkpoint = checkpoint();
+        if (checkpoint != null)
+            return model(checkpoint.vocab(), trainer(listener, checkpoint.vocab(), checkpoint).train(corpus, 0));
+        final WordCounts wordCounts = count(listener, corpus, !vocab.isPresent());
+        final Vocab vocab = vocab(listener, wordCounts);
+        final NeuralNetworkModel model = trainer(listener, vocab, null).train(corpus, wordCounts.sentences());
+        return model(vocab, model);
+    }
+
+    /**
+     * @return Vocabulary given by the user, or counted, filtered and sorted by
+     *         frequency decreasing, then lexicographically ascending
+     */
+    private Vocab vocab(TrainingProgressListener listener, WordCounts counts)
+    {
         listener.update(Stage.FILTER_SORT_VOCAB, 0.0);
-        vocab = filterAndSort(counts);
-        final Map<String, HuffmanNode> huffmanNodes;
-        huffmanNodes = new HuffmanCoding(vocab, listener).encode();
-        final NeuralNetworkModel model;
-        model = neuralNetworkConfig.createTrainer(vocab, huffmanNodes, listener).train(sentences);
+        return (vocab.isPresent()) ? Vocab.sort(vocab.get(), minFrequency)
+                : counts.toVocab(minFrequency, previousWords());
+    }
+
+    /** @return Words of the model to train again, kept in the vocabulary, or none */
+    private String[] previousWords()
+    {
+        if (previousModel.isPresent())
+            return previousModel.get().vocab;
+        if (previousCheckpoints.isPresent())
+            return previousCheckpoint().vocab().words();
+        return new String[0];
+    }
+
+    /** @return Final checkpoint of the training to train again */
+    private Checkpoint previousCheckpoint()
+    {
+        if (previousCheckpoint == null) {
+            try {
+                previousCheckpoint = Checkpoint.read(previousCheckpoints.get());
+            } catch (IOException e) {
+                throw new IllegalStateException("Error reading checkpoint", e);
+            }
+        }
+        return previousCheckpoint;
+    }
+
+    /**
+     * @return Last checkpoint to resume, with its vocabulary, or null to start a
+     *         new training
+     */
+    private Checkpoint checkpoint()
+    {
+        if (!resume || !checkpoints.isPresent() || !Checkpoint.exists(checkpoints.get()))
+            return null;
+        try {
+            return Checkpoint.read(checkpoints.get());
+        } catch (IOException e) {
+            throw new IllegalStateException("Error reading checkpoint", e);
+        }
+    }
+
+    /**
+     * @param checkpoint Checkpoint to resume, or null
+     * @return Neural network trainer, with the Huffman encoding of the vocabulary
+     */
+    private NeuralNetworkTrainer trainer(TrainingMonitor listener, Vocab vocab, Checkpoint checkpoint)
+            throws InterruptedException
+    {
+        final Codes codes = new HuffmanCoding(vocab, listener).encode();
+        final NeuralNetworkTrainer trainer = neuralNetworkConfig.createTrainer(vocab, codes, listener);
+        trainer.monitor(listener);
+        try {
+            if (checkpoints.isPresent())
+                trainer.useCheckpoints(checkpoints.get(), checkpointMillis, TimeUnit.MILLISECONDS);
+            if (transport.isPresent())
+                trainer.distribute(transport.get(), averageMillis, TimeUnit.MILLISECONDS);
+            if (checkpoint != null)
+                trainer.resume(checkpoint);
+            else if (previousModel.isPresent())
+                trainer.initialize(previousModel.get().vocab, previousModel.get().layerSize,
+                        previousModel.get().vectors);
+            else if (previousCheckpoints.isPresent())
+                trainer.initialize(previousCheckpoint());
+        } catch (IOException e) {
+            throw new IllegalStateException("Error reading checkpoint", e);
+        }
+        return trainer;
+    }
+
+    /** @return Model with the vectors of the trained network */
+    private static VecModel model(Vocab vocab, NeuralNetworkModel model)
+    {
         double[] doubles = Doubles.concat(model.vectors());
         return new VecModel(
-            vocab.elementSet().toArray(new String[vocab.elementSet().size()]),
+            vocab.words(),
             model.layerSize(),
             doubles
         );
@@ -1,14 +1,23 @@
 package com.github.oeuvres.jword2vec;
 
+import com.github.oeuvres.jword2vec.neuralnetwork.Checkpoint;
+import com.github.oeuvres.jword2vec.neuralnetwork.LearningRateSchedule;
 import com.github.oeuvres.jword2vec.neuralnetwork.NeuralNetworkConfig;
 import com.github.oeuvres.jword2vec.neuralnetwork.NeuralNetworkType;
+import com.github.oeuvres.jword2vec.neuralnetwork.ParameterTransport;
+import com.github.oeuvres.jword2vec.neuralnetwork.TrainingMetrics;
+import com.github.oeuvres.jword2vec.neuralnetwork.TrainingMonitor;
 import com.google.common.base.MoreObjects;
-import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Multiset;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * Builder pattern for training a new {@link VecModel}
@@ -20,9 +29,10 @@
  * <li>When building the vocabulary from the training file:
  * <ul>
  * <li>The original version does a reduction step when learning the vocabulary
- * from the file when the vocab size hits 21 million words, removing any words
- * that do not meet the minimum frequency threshold. This Java port has no such
- * reduction step.
+ * from the file when the vocab size hits 21 million words, removing the words
+ * seen once, then twice, etc. This Java port does the same, in each counting
+ * thread with a share of a configurable limit, see
+ * {@link #setMaxVocabSize(int)}.
  * <li>The original version injects a &lt;/s&gt; token into the vocabulary (with
  * a word count of 0) as a substitute for newlines in the input file. This Java
  * port's vocabulary excludes the token.
@@ -70,16 +80,28 @@
 
     private Integer layerSize;
     private Integer windowSize;
-    private Integer numThreads;
+    Integer numThreads;
     private NeuralNetworkType type;
     private int negativeSamples;
     private boolean useHierarchicalSoftmax;
-    private Multiset<String> vocab;
-    private Integer minFrequency;
+    Multiset<String> vocab;
+    Integer minFrequency;
+    Integer maxVocabSize;
     private Double initialLearningRate;
+    private LearningRateSchedule schedule;
     private Double downSampleRate;
     private Integer iterations;
     private TrainingProgressListener listener;
+    Path checkpoints;
+    long checkpointMillis;
+    boolean resume;
+    VecModel previousModel;
+    Path previousCheckpoints;
+    ParameterTransport transport;
+    long averageMillis;
+    private TrainingMetricsListener metricsListener;
+    private long metricsMillis = TrainingMonitor.DEFAULT_INTERVAL_MILLIS;
+    private boolean jmx;
 
     VecTrainerBuilder()
     {
@@ -182,6 +204,22 @@ public VecTrainerBuilder setMinVocabFrequency(int minFrequency)
         return this;
     }
 
+    /**
+     * Specify the maximum count of distinct words kept while counting the
+     * vocabulary. When this limit is reached, the rarest words are removed, like
+     * the C version does. Each counting thread has a share of this limit, limit /
+     * count of threads, so that the memory of the counts does not grow with the
+     * threads, and the rare words of a thread may be removed before the limit.
+     * <p>
+     * Defaults to 21 million
+     */
+    public VecTrainerBuilder setMaxVocabSize(int maxVocabSize)
+    {
+        Preconditions.checkArgument(maxVocabSize > 0, "Value must be positive");
+        this.maxVocabSize = maxVocabSize;
+        return this;
+    }
+
     /**
      * Set the starting learning rate
      * <p>
@@ -194,6 +232,17 @@ public VecTrainerBuilder setInitialLearningRate(double initialLearningRate)
         return this;
     }
 
+    /**
+     * Set the schedule of the learning rate along the training
+     * <p>
+     * Default is {@link LearningRateSchedule#LINEAR}, as the C version
+     */
+    public VecTrainerBuilder setLearningRateSchedule(LearningRateSchedule schedule)
+    {
+        this.schedule = Preconditions.checkNotNull(schedule);
+        return this;
+    }
+
     /**
      * Set threshold for occurrence of words. Those that appear with higher
      * frequency in the training data, e.g. stopwords, will be randomly removed
@@ -215,6 +264,90 @@ public VecTrainerBuilder setNumIterations(int iterations)
         return this;
     }
 
+    /**
+     * Save the state of the training at regular intervals in a directory, to
+     * resume it after a crash, see {@link #resumeFromCheckpoint()}. Each
+     * checkpoint replaces the last one, the last one is written at the end of the
+     * training. The file is mapped before the training is paused, only while the
+     * weights are copied in the mapped memory.
+     * 
+     * @param directory Directory of the checkpoints, created if needed
+     * @param interval  Delay between two checkpoints
+     */
+    public VecTrainerBuilder useCheckpoints(Path directory, long interval, TimeUnit unit)
+    {
+        Preconditions.checkArgument(interval > 0, "Value must be positive");
+        this.checkpoints = Preconditions.checkNotNull(directory);
+        this.checkpointMillis = unit.toMillis(interval);
+        return this;
+    }
+
+    /**
+     * Resume the training from the last checkpoint of the directory given to
+     * {@link #useCheckpoints(Path, long, TimeUnit)}, if any. The vocabulary is
+     * read from the checkpoint, the sentences are not counted again, and the
+     * training goes on from the first chunk of sentences not processed. Other
+     * settings must be the same as those of the interrupted training.
+     */
+    public VecTrainerBuilder resumeFromCheckpoint()
+    {
+        this.resume = true;
+        return this;
+    }
+
+    /**
+     * Train again a model on new sentences, starting from its vectors. The
+     * vocabulary is counted on the new sentences, it keeps all the words of the
+     * model, and adds the new ones frequent enough. New words start with random
+     * vectors, the output weights start from zero.
+     * <p>
+     * The layer size must be the one of the model. A few iterations, with a
+     * smaller learning rate, are usually enough.
+     */
+    public VecTrainerBuilder continueFrom(VecModel model)
+    {
+        this.previousModel = Preconditions.checkNotNull(model);
+        this.previousCheckpoints = null;
+        return this;
+    }
+
+    /**
+     * Train again on new sentences, starting from the last checkpoint of a
+     * previous training, see {@link #useCheckpoints(Path, long, TimeUnit)}, which
+     * is written at its end. Unlike {@link #continueFrom(VecModel)}, the output
+     * weights of negative sampling are kept. Those of hierarchical softmax are not,
+     * they belong to the nodes of a Huffman tree built again with the new words.
+     */
+    public VecTrainerBuilder continueFromCheckpoint(Path directory)
+    {
+        Preconditions.checkArgument(Checkpoint.exists(directory), "No checkpoint in %s", directory);
+        this.previousCheckpoints = directory;
+        this.previousModel = null;
+        return this;
+    }
+
+    /**
+     * Train with other processes, on this host or on others, each one on its own
+     * shard of the corpus, see {@link com.github.oeuvres.jword2vec.neuralnetwork.SocketTransport}
+     * and {@link com.github.oeuvres.jword2vec.neuralnetwork.MappedFileTransport}.
+     * The weights of all the processes are averaged at regular intervals, and at
+     * the end, so that they all return the same model.
+     * <p>
+     * The vocabulary must be counted on the whole corpus and given to all the
+     * processes with {@link #useVocab(Multiset)}, the other settings must be the
+     * same, count of threads included, the training fails otherwise.
+     * 
+     * @param transport Connection to the other processes, not closed
+     * @param interval  Delay between two averages
+     */
+    public VecTrainerBuilder distribute(ParameterTransport transport, long interval, TimeUnit unit)
+    {
+        Preconditions.checkArgument(interval > 0, "Value must be positive");
+        this.transport = Preconditions.checkNotNull(transport);
+        this.averageMillis = unit.toMillis(interval);
+        return this;
+    }
+
     /** Set a progress listener */
     public VecTrainerBuilder setListener(TrainingProgressListener listener)
     {
@@ -222,8 +355,92 @@ public VecTrainerBuilder setListener(TrainingProgressListener listener)
         return this;
     }
 
-    /** Train the model */
+    /**
+     * Report the metrics of the training of the neural network at regular
+     * intervals, from a reporter thread which samples the counters of the
+     * workers. The progress is given to the listener of
+     * {@link #setListener(TrainingProgressListener)} at the same intervals.
+     * <p>
+     * The metrics are also recorded as JFR events, when a flight recording
+     * enables the event <code>com.github.oeuvres.jword2vec.Training</code>.
+     * 
+     * @param listener Listener of the metrics, called by the reporter thread
+     * @param interval Delay between two reports
+     */
+    public VecTrainerBuilder reportMetrics(TrainingMetricsListener listener, long interval, TimeUnit unit)
+    {
+        Preconditions.checkArgument(interval > 0, "Value must be positive");
+        this.metricsListener = Preconditions.checkNotNull(listener);
+        this.metricsMillis = unit.toMillis(interval);
+        return this;
+    }
+
+    /**
+     * Register the metrics of the training in the platform MBean server while it
+     * runs, as
+     * <code>com.github.oeuvres.jword2vec:type=Training,name=training-N</code>,
+     * N the count of the trainings registered by this JVM, so that concurrent
+     * trainings do not collide; query
+     * <code>com.github.oeuvres.jword2vec:type=Training,*</code> to find them.
+     * See {@link com.github.oeuvres.jword2vec.neuralnetwork.TrainingMXBean}
+     */
+    public VecTrainerBuilder exportMetricsToJmx()
+    {
+        this.jmx = true;
+        return this;
+    }
+
+    /**
+     * Train the model. Sentences are iterated once for the vocabulary, and again
+     * for each iteration, they are not held in memory.
+     */
     public VecModel train(Iterable<List<String>> sentences) throws InterruptedException
+    {
+        return trainer().train(monitor(), sentences);
+    }
+
+    /**
+     * Train the model from a stream of sentences. A new stream is asked once for
+     * the vocabulary, and again for each iteration, each one is closed after use.
+     * Sentences are not held in memory, only the vocabulary is.
+     */
+    public VecModel train(Supplier<? extends Stream<List<String>>> sentences) throws InterruptedException
+    {
+        return trainer().train(monitor(), sentences);
+    }
+
+    /**
+     * Train the model from a text file, as expected by the C tool: UTF-8, one
+     * sentence by line, tokens separated by white spaces. The file is streamed
+     * once for the vocabulary, and again for each iteration, each thread reading
+     * its own range of the file.
+     */
+    public VecModel train(Path textFile) throws InterruptedException, IOException
+    {
+        try (TextCorpus corpus = TextCorpus.open(textFile)) {
+            return trainer().train(monitor(), corpus);
+        }
+    }
+
+    /**
+     * Train the model from a corpus written by
+     * {@link CorpusFile#write(Iterable, java.nio.file.Path)}. Sentences are not
+     * tokenized again, the file is memory mapped, so that the same corpus may be
+     * reused for many trainings.
+     */
+    public VecModel train(CorpusFile corpus) throws InterruptedException
+    {
+        return trainer().train(monitor(), corpus);
+    }
+
+    /** @return Monitor of a training, to call after {@link #trainer()} */
+    private TrainingMonitor monitor()
+    {
+        return new TrainingMonitor(listener, metricsListener, metricsMillis, TimeUnit.MILLISECONDS, jmx);
+    }
+
+    /** Set the defaults, and create the trainer */
+    private VecTrainer trainer()
     {
         this.type = MoreObjects.firstNonNull(type, NeuralNetworkType.CBOW);
         this.initialLearningRate = MoreObjects.firstNonNull(initialLearningRate, type.getDefaultInitialLearningRate());
@@ -234,6 +451,8 @@ public VecModel train(Iterable<List<String>> sentences) throws InterruptedExcept
         this.windowSize = MoreObjects.firstNonNull(windowSize, 5);
         this.downSampleRate = MoreObjects.firstNonNull(downSampleRate, 0.001);
         this.minFrequency = MoreObjects.firstNonNull(minFrequency, 5);
+        this.maxVocabSize = MoreObjects.firstNonNull(maxVocabSize, 21_000_000);
+        this.schedule = MoreObjects.firstNonNull(schedule, LearningRateSchedule.LINEAR);
         this.listener = MoreObjects.firstNonNull(listener, new TrainingProgressListener()
         {
             @Override
@@ -243,12 +462,20 @@ public void update(Stage stage, double progress)
             }
         });
 
-        Optional<Multiset<String>> vocab = this.vocab == null ? Optional.<Multiset<String>>absent()
-                : Optional.of(this.vocab);
+        Preconditions.checkState(!resume || checkpoints != null, "No directory of checkpoints to resume");
 
-        return new VecTrainer(minFrequency, vocab, new NeuralNetworkConfig(type, numThreads, iterations, layerSize,
-                windowSize, negativeSamples, downSampleRate, initialLearningRate, useHierarchicalSoftmax))
-                .train(listener, sentences);
+        return new VecTrainer(this, new NeuralNetworkConfig(type, numThreads, iterations, layerSize, windowSize,
+                negativeSamples, downSampleRate, initialLearningRate, useHierarchicalSoftmax, schedule));
+    }
+
+    /** Listener of the metrics of a training, see {@link #reportMetrics(TrainingMetricsListener, long, TimeUnit)} */
+    public interface TrainingMetricsListener
+    {
+        /**
+         * Called by the reporter thread of the training, at regular intervals, and
+         * once at the end
+         */
+        void report(TrainingMetrics metrics);
     }
 
     /** Listener for model training progress */
@@ -263,7 +490,8 @@ public void update(Stage stage, double progress)
         /**
          * Called during word2vec training
          * <p>
-         * Note that this is called in a separate thread from the processing thread
+         * Note that this is called in a separate thread from the processing thread,
+         * during the training of the neural network by the reporter thread only
          * 
          * @param stage    Current {@link Stage} of processing
          * @param progress Progress of the current stage as a double value between 0 and
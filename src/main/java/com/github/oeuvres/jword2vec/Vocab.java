@@ -0,0 +1,231 @@
+package com.github.oeuvres.jword2vec;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Multiset;
+
+/**
+ * Vocabulary for training, in primitive arrays: words sorted by count
+ * descending, then lexicographically ascending, their counts, and a hash index
+ * from word to id. Id of a word is its rank in this order.
+ */
+public class Vocab
+{
+    /** Words by id */
+    private final String[] words;
+    /** Counts by id */
+    private final long[] counts;
+    /** Sum of counts */
+    private final long total;
+    /** Open addressing hash index, id + 1 by slot, 0 if empty */
+    private final int[] slots;
+    /** Capacity - 1, capacity is a power of 2 */
+    private final int mask;
+
+    /** Words and counts already sorted */
+    private Vocab(final String[] words, final long[] counts)
+    {
+        this.words = words;
+        this.counts = counts;
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        this.total = total;
+        final int capacity = Integer.highestOneBit(Math.max(words.length, 1) * 2 + 1) << 1;
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+        for (int id = 0; id < words.length; id++) {
+            int slot = hash(words[id]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Sort words by count descending, then lexicographically ascending, keeping
+     * those with a count of at least minCount.
+     *
+     * @param words    distinct words
+     * @param counts   counts of the words
+     * @param size     count of words in the arrays
+     * @param minCount minimum count of a word to be kept
+     */
+    public static Vocab sort(final String[] words, final long[] counts, final int size, final long minCount)
+    {
+        return sort(words, counts, size, minCount, new String[0]);
+    }
+
+    /**
+     * Sort words by count descending, then lexicographically ascending, keeping
+     * those with a count of at least minCount, and all the words of keep, as those
+     * of a model to train again. Words of keep not counted are added with a count
+     * of 0.
+     *
+     * @param words    distinct words
+     * @param counts   counts of the words
+     * @param size     count of words in the arrays
+     * @param minCount minimum count of a word to be kept
+     * @param keep     words kept whatever their count
+     */
+    public static Vocab sort(final String[] words, final long[] counts, final int size, final long minCount,
+            final String[] keep)
+    {
+        Preconditions.checkArgument(size <= words.length && size <= counts.length, "Bad size %s", size);
+        final Set<String> wanted = new HashSet<>(Arrays.asList(keep));
+        // keep frequent enough words
+        int n = 0;
+        String[] kept = new String[size + wanted.size()];
+        long[] keptCounts = new long[kept.length];
+        for (int i = 0; i < size; i++) {
+            if (!wanted.remove(words[i]) && counts[i] < minCount) {
+                continue;
+            }
+            kept[n] = words[i];
+            keptCounts[n] = counts[i];
+            n++;
+        }
+        for (String word : wanted) {
+            kept[n++] = word;
+        }
+        kept = Arrays.copyOf(kept, n);
+        keptCounts = Arrays.copyOf(keptCounts, n);
+        // lexicographic order, the index of the unsorted words gives back the counts
+        final Vocab unsorted = new Vocab(kept, keptCounts);
+        final String[] lexical = kept.clone();
+        Arrays.parallelSort(lexical);
+        final long[] lexicalCounts = new long[n];
+        for (int i = 0; i < n; i++) {
+            lexicalCounts[i] = keptCounts[unsorted.id(lexical[i])];
+        }
+        // a stable sort by count descending keeps the lexicographic order for ties
+        final int[] order = radixSortDescending(lexicalCounts);
+        final String[] sortedWords = new String[n];
+        final long[] sortedCounts = new long[n];
+        for (int i = 0; i < n; i++) {
+            sortedWords[i] = lexical[order[i]];
+            sortedCounts[i] = lexicalCounts[order[i]];
+        }
+        return new Vocab(sortedWords, sortedCounts);
+    }
+
+    /**
+     * @param counts multiset of words
+     * @param minCount minimum count of a word to be kept
+     * @see #sort(String[], long[], int, long)
+     */
+    public static Vocab sort(final Multiset<String> counts, final long minCount)
+    {
+        final String[] words = new String[counts.elementSet().size()];
+        final long[] values = new long[words.length];
+        int i = 0;
+        for (Multiset.Entry<String> e : counts.entrySet()) {
+            words[i] = e.getElement();
+            values[i] = e.getCount();
+            i++;
+        }
+        return sort(words, values, i, minCount);
+    }
+
+    /**
+     * Stable LSD radix sort of positive longs, 16 bits by pass, skipping the
+     * passes where all digits are equal.
+     *
+     * @return Positions of the values, by value descending
+     */
+    static int[] radixSortDescending(final long[] values)
+    {
+        final int n = values.length;
+        int[] order = new int[n];
+        int[] buffer = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        final int[] histogram = new int[1 << 16];
+        for (int shift = 0; shift < 64; shift += 16) {
+            Arrays.fill(histogram, 0);
+            for (int i = 0; i < n; i++) {
+                histogram[digit(values[i], shift)]++;
+            }
+            if (n == 0 || histogram[digit(values[0], shift)] == n) {
+                continue;
+            }
+            int sum = 0;
+            for (int d = 0; d < histogram.length; d++) {
+                final int count = histogram[d];
+                histogram[d] = sum;
+                sum += count;
+            }
+            for (int i = 0; i < n; i++) {
+                final int position = order[i];
+                buffer[histogram[digit(values[position], shift)]++] = position;
+            }
+            final int[] swap = order;
+            order = buffer;
+            buffer = swap;
+        }
+        return order;
+    }
+
+    /** @return Digit of a value for a descending sort */
+    private static int digit(final long value, final int shift)
+    {
+        return 0xFFFF - (int) ((value >>> shift) & 0xFFFF);
+    }
+
+    /** Spread the bits of the hash code */
+    private static int hash(final String word)
+    {
+        final int h = word.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /** @return Id of a word, or -1 if absent */
+    public int id(final String word)
+    {
+        int slot = hash(word) & mask;
+        while (slots[slot] != 0) {
+            final int id = slots[slot] - 1;
+            if (words[id].equals(word)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /** @return Count of words */
+    public int size()
+    {
+        return words.length;
+    }
+
+    /** @return Word by id */
+    public String word(final int id)
+    {
+        return words[id];
+    }
+
+    /** @return Count of a word by id */
+    public long count(final int id)
+    {
+        return counts[id];
+    }
+
+    /** @return Sum of the counts of all words */
+    public long total()
+    {
+        return total;
+    }
+
+    /** @return A copy of the words, by id */
+    public String[] words()
+    {
+        return words.clone();
+    }
+}
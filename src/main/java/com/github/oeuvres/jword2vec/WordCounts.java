@@ -0,0 +1,234 @@
+package com.github.oeuvres.jword2vec;
+
+import com.google.common.collect.Multiset;
+
+/**
+ * Counts of words, in an open addressing hash table of primitive arrays, to
+ * avoid the boxing of a {@link Multiset} when counting a big corpus. Not
+ * thread safe, one table by counting thread, merged at the end.
+ * <p>
+ * Like the C tool, when the count of distinct words exceeds a limit, the rare
+ * words are removed: first the words seen once, then twice, etc. Counts are
+ * then approximate for the rare words, not for the words frequent enough to
+ * be kept in the vocabulary.
+ */
+class WordCounts
+{
+    /** Load factor of the hash table */
+    private static final double LOAD_FACTOR = 0.7;
+    /** Maximum count of distinct words before pruning */
+    private int maxSize;
+    /** Words by slot, null if empty */
+    private String[] words;
+    /** Counts by slot */
+    private long[] counts;
+    /** Hash of the words by slot, to avoid calls to equals() */
+    private int[] hashes;
+    /** Capacity - 1, capacity is a power of 2 */
+    private int mask;
+    /** Count of distinct words */
+    private int size;
+    /** Words with count below or equal are removed at next pruning */
+    private long minReduce = 1;
+    /** Count of sentences */
+    private long sentences;
+
+    /**
+     * @param maxSize Maximum count of distinct words before pruning of rare words
+     */
+    WordCounts(final int maxSize)
+    {
+        this.maxSize = maxSize;
+        allocate(1 << 12);
+    }
+
+    /** Allocate an empty table */
+    private void allocate(final int capacity)
+    {
+        words = new String[capacity];
+        counts = new long[capacity];
+        hashes = new int[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    /** Spread the bits of the hash code */
+    private static int hash(final String word)
+    {
+        final int h = word.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /** Add one occurrence of a word */
+    void add(final String word)
+    {
+        add(word, 1);
+    }
+
+    /** Add occurrences of a word */
+    void add(final String word, final long count)
+    {
+        final int hash = hash(word);
+        int slot = hash & mask;
+        while (words[slot] != null) {
+            if (hashes[slot] == hash && words[slot].equals(word)) {
+                counts[slot] += count;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        words[slot] = word;
+        counts[slot] = count;
+        hashes[slot] = hash;
+        size++;
+        if (size > maxSize) {
+            reduce();
+        }
+        else if (size > words.length * LOAD_FACTOR) {
+            rehash(words.length * 2);
+        }
+    }
+
+    /** Count one sentence */
+    void sentence()
+    {
+        sentences++;
+    }
+
+    /**
+     * Remove the rare words until the count of distinct words is below the
+     * limit, like ReduceVocab() of the C tool.
+     */
+    private void reduce()
+    {
+        while (size > maxSize) {
+            prune(minReduce);
+            minReduce++;
+        }
+    }
+
+    /** Remove words with a count below or equal to threshold */
+    private void prune(final long threshold)
+    {
+        final String[] oldWords = words;
+        final long[] oldCounts = counts;
+        final int[] oldHashes = hashes;
+        allocate(oldWords.length);
+        for (int i = 0; i < oldWords.length; i++) {
+            if (oldWords[i] == null || oldCounts[i] <= threshold) {
+                continue;
+            }
+            put(oldWords[i], oldCounts[i], oldHashes[i]);
+        }
+    }
+
+    /** Grow the table */
+    private void rehash(final int capacity)
+    {
+        final String[] oldWords = words;
+        final long[] oldCounts = counts;
+        final int[] oldHashes = hashes;
+        allocate(capacity);
+        for (int i = 0; i < oldWords.length; i++) {
+            if (oldWords[i] == null) {
+                continue;
+            }
+            put(oldWords[i], oldCounts[i], oldHashes[i]);
+        }
+    }
+
+    /** Insert a word known to be absent */
+    private void put(final String word, final long count, final int hash)
+    {
+        int slot = hash & mask;
+        while (words[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        words[slot] = word;
+        counts[slot] = count;
+        hashes[slot] = hash;
+        size++;
+    }
+
+    /**
+     * Change the maximum count of distinct words, for the table which merges the
+     * tables of the counting threads, each with a share of the limit
+     */
+    void maxSize(final int maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    /** Add the counts of another table to this one */
+    void merge(final WordCounts other)
+    {
+        minReduce = Math.max(minReduce, other.minReduce);
+        sentences += other.sentences;
+        for (int i = 0; i < other.words.length; i++) {
+            if (other.words[i] == null) {
+                continue;
+            }
+            add(other.words[i], other.counts[i]);
+        }
+    }
+
+    /** @return Count of distinct words */
+    int size()
+    {
+        return size;
+    }
+
+    /** @return Count of sentences */
+    long sentences()
+    {
+        return sentences;
+    }
+
+    /** @return Count of a word, 0 if absent */
+    long count(final String word)
+    {
+        final int hash = hash(word);
+        int slot = hash & mask;
+        while (words[slot] != null) {
+            if (hashes[slot] == hash && words[slot].equals(word)) {
+                return counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    /** @return {@link Vocab} of the words with a count at least of minCount */
+    Vocab toVocab(final long minCount)
+    {
+        return toVocab(minCount, new String[0]);
+    }
+
+    /**
+     * @param keep words kept whatever their count
+     * @return {@link Vocab} of the words with a count at least of minCount, and
+     *         of the words to keep
+     */
+    Vocab toVocab(final long minCount, final String[] keep)
+    {
+        final String[] keptWords = new String[size];
+        final long[] keptCounts = new long[size];
+        int n = 0;
+        for (int i = 0; i < words.length; i++) {
+            if (words[i] == null) {
+                continue;
+            }
+            keptWords[n] = words[i];
+            keptCounts[n] = counts[i];
+            n++;
+        }
+        return Vocab.sort(keptWords, keptCounts, n, minCount, keep);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%d words, %d sentences, words seen %d times or less removed", size, sentences,
+                minReduce - 1);
+    }
+}
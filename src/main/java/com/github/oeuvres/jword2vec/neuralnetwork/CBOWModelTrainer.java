@@ -1,38 +1,32 @@
 package com.github.oeuvres.jword2vec.neuralnetwork;
 
-import com.github.oeuvres.jword2vec.HuffmanCoding.HuffmanNode;
-import com.github.oeuvres.jword2vec.VecTrainerBuilder.TrainingProgressListener;
-import com.google.common.collect.Multiset;
+import java.util.Arrays;
 
-import java.util.List;
-import java.util.Map;
+import com.github.oeuvres.jword2vec.HuffmanCoding.Codes;
+import com.github.oeuvres.jword2vec.VecTrainerBuilder.TrainingProgressListener;
+import com.github.oeuvres.jword2vec.Vocab;
 
 /**
  * Trainer for neural network using continuous bag of words
  */
 class CBOWModelTrainer extends NeuralNetworkTrainer {
 	
-	CBOWModelTrainer(NeuralNetworkConfig config, Multiset<String> counts, Map<String, HuffmanNode> huffmanNodes, TrainingProgressListener listener) {
-		super(config, counts, huffmanNodes, listener);
+	CBOWModelTrainer(NeuralNetworkConfig config, Vocab vocab, Codes codes, TrainingProgressListener listener) {
+		super(config, vocab, codes, listener);
 	}
 	
 	/** {@link Worker} for {@link CBOWModelTrainer} */
 	private class CBOWWorker extends Worker {
-		private CBOWWorker(int randomSeed, int iter, Iterable<List<String>> batch) {
-			super(randomSeed, iter, batch);
+		private CBOWWorker(int randomSeed, WorkQueue queue) {
+			super(randomSeed, queue);
 		}
 		
-		@Override void trainSentence(List<String> sentence) {
-			int sentenceLength = sentence.size();
-			
+		@Override void trainSentence(int[] sentence, int offset, int sentenceLength) {
 			for (int sentencePosition = 0; sentencePosition < sentenceLength; sentencePosition++) {
-				String word = sentence.get(sentencePosition);
-				HuffmanNode huffmanNode = huffmanNodes.get(word);
+				int word = sentence[offset + sentencePosition];
 
-				for (int c = 0; c < layer1_size; c++)
-					neu1[c] = 0;
-				for (int c = 0; c < layer1_size; c++)
-					neu1e[c] = 0;
+				Arrays.fill(neu1, 0);
+				Arrays.fill(neu1e, 0);
 				
 				nextRandom = incrementRandom(nextRandom);
 				int b = (int)((nextRandom % window) + window) % window;
@@ -45,10 +39,8 @@ private CBOWWorker(int randomSeed, int iter, Iterable<List<String>> batch) {
 					int c = sentencePosition - window + a;
 					if (c < 0 || c >= sentenceLength)
 						continue;
-					int idx = huffmanNodes.get(sentence.get(c)).idx;
-					for (int d = 0; d < layer1_size; d++) {
-						neu1[d] += syn0[idx][d];
-					}
+					int idx = sentence[offset + c];
+					KERNELS.axpy(1, syn0[idx], 0, neu1, 0, layer1_size);
 					
 					cw++;
 				}
@@ -56,32 +48,25 @@ private CBOWWorker(int randomSeed, int iter, Iterable<List<String>> batch) {
 				if (cw == 0)
 					continue;
 				
-				for (int c = 0; c < layer1_size; c++)
-					neu1[c] /= cw;
+				KERNELS.scale(1.0 / cw, neu1, 0, layer1_size);
 				
 				if (config.useHierarchicalSoftmax) {
-					for (int d = 0; d < huffmanNode.code.length; d++) {
-						double f = 0;
-						int l2 = huffmanNode.point[d];
-						// Propagate hidden -> output                                                                                                                                                                     
-						for (int c = 0; c < layer1_size; c++)
-							f += neu1[c] * syn1[l2][c];
+					for (int d = codeOffsets[word]; d < codeOffsets[word + 1]; d++) {
+						int l2 = point[d];
+						// Propagate hidden -> output
+						double f = KERNELS.dot(neu1, 0, syn1[l2], 0, layer1_size);
 						if (f <= -MAX_EXP || f >= MAX_EXP)
 							continue;
 						else
 							f = EXP_TABLE[(int)((f + MAX_EXP) * (EXP_TABLE_SIZE / MAX_EXP / 2))];
 						// 'g' is the gradient multiplied by the learning rate                                                                                                                                            
-						double g = (1 - huffmanNode.code[d] - f) * alpha;
-						// Propagate errors output -> hidden                                                                                                                                                              
-						for (int c = 0; c < layer1_size; c++)
-							neu1e[c] += g * syn1[l2][c];
-						// Learn weights hidden -> output                                                                                                                                                                 
-						for (int c = 0; c < layer1_size; c++)
-							syn1[l2][c] += g * neu1[c];
+						double g = (1 - code[d] - f) * alpha;
+						// Propagate errors output -> hidden, and learn weights hidden -> output
+						KERNELS.axpy2(g, neu1, 0, syn1[l2], 0, neu1e, 0, layer1_size);
 					}
 				}
 				
-				handleNegativeSampling(huffmanNode);
+				handleNegativeSampling(word, neu1);
 				
 				// hidden -> in                                                                                                                                                                                     
 				for (int a = b; a < window * 2 + 1 - b; a++) {
@@ -90,15 +75,14 @@ private CBOWWorker(int randomSeed, int iter, Iterable<List<String>> batch) {
 					int c = sentencePosition - window + a;
 					if (c < 0 || c >= sentenceLength)
 						continue;
-					int idx = huffmanNodes.get(sentence.get(c)).idx;
-					for (int d = 0; d < layer1_size; d++)
-						syn0[idx][d] += neu1e[d];
+					int idx = sentence[offset + c];
+					KERNELS.axpy(1, neu1e, 0, syn0[idx], 0, layer1_size);
 				}
 			}
 		}
 	}
 
-	@Override Worker createWorker(int randomSeed, int iter, Iterable<List<String>> batch) {
-		return new CBOWWorker(randomSeed, iter, batch);
+	@Override Worker createWorker(int randomSeed, WorkQueue queue) {
+		return new CBOWWorker(randomSeed, queue);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,407 @@
+package com.github.oeuvres.jword2vec.neuralnetwork;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.oeuvres.jword2vec.Vocab;
+import com.google.common.base.Preconditions;
+
+/**
+ * State of a training, saved between two chunks of sentences, to resume it
+ * after a crash: vocabulary, weights of the network, learning rate, count of
+ * words processed, position of the next chunk, random state of each worker.
+ * <p>
+ * Layout of the file, little endian:
+ * <ul>
+ * <li>header: magic, version, size of the vocabulary, layer size, flags of the
+ * output layers, count of workers, iteration, count of tokens to train, count
+ * of words processed, learning rate, offset of the next chunk in the iteration,
+ * offset of the vocabulary section
+ * <li>random state of each worker (int64)
+ * <li>weights: syn0, then syn1 and syn1neg if used, vocabulary size × layer
+ * size doubles each, aligned to 8 bytes so that they may be memory mapped
+ * <li>vocabulary: for each word, its count (int64), its length in bytes
+ * (int32), and its UTF-8 bytes, in the order of the ids
+ * </ul>
+ * A new checkpoint is written aside, then moved over the last one, so that a
+ * crash while writing never loses the last good checkpoint.
+ */
+public class Checkpoint
+{
+    /** Name of the checkpoint in its directory */
+    static final String FILE_NAME = "checkpoint.bin";
+    /** "W2CK" */
+    static final private int MAGIC = 0x4B433257;
+    static final private int VERSION = 1;
+    /** Size of the header in bytes */
+    static final private int HEADER_BYTES = 80;
+    /** Flag of the hierarchical softmax layer */
+    static final private int SYN1 = 1;
+    /** Flag of the negative sampling layer */
+    static final private int SYN1NEG = 2;
+    /** Maximum size of a mapped window of weights */
+    static final private long WINDOW_BYTES = 1 << 30;
+
+    /** Checkpoint file */
+    private final Path path;
+    /** Vocabulary, ids are the rows of the weights */
+    private final Vocab vocab;
+    final int layerSize;
+    /** Flags of the output layers saved */
+    private final int flags;
+    /** Iteration of the next chunk */
+    final int iteration;
+    /** Offset of the next chunk in the iteration, in bytes or in sentences */
+    final long offset;
+    final long numTrainedTokens;
+    final long actualWordCount;
+    /** Learning rate, for information, workers compute it again from the count of words */
+    final double alpha;
+    /** Random state by worker */
+    final long[] randoms;
+    /** Start of the weights in the file */
+    private final long weightsStart;
+
+    private Checkpoint(final Path path) throws IOException
+    {
+        this.path = path;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException(String.format("%s is not a checkpoint", path));
+            }
+            final int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("%s, version=%d, expected %d", path, version, VERSION));
+            }
+            final int vocabSize = header.getInt();
+            layerSize = header.getInt();
+            flags = header.getInt();
+            final int workers = header.getInt();
+            iteration = header.getInt();
+            header.getInt();
+            numTrainedTokens = header.getLong();
+            actualWordCount = header.getLong();
+            alpha = header.getDouble();
+            offset = header.getLong();
+            final long vocabStart = header.getLong();
+
+            final ByteBuffer randomBuffer = ByteBuffer.allocate(workers * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, randomBuffer, HEADER_BYTES);
+            randomBuffer.flip();
+            randoms = new long[workers];
+            randomBuffer.asLongBuffer().get(randoms);
+            weightsStart = HEADER_BYTES + (long) workers * Long.BYTES;
+
+            final ByteBuffer vocabBuffer = channel
+                    .map(FileChannel.MapMode.READ_ONLY, vocabStart, channel.size() - vocabStart)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            final String[] words = new String[vocabSize];
+            final long[] counts = new long[vocabSize];
+            byte[] bytes = new byte[256];
+            for (int id = 0; id < vocabSize; id++) {
+                counts[id] = vocabBuffer.getLong();
+                final int length = vocabBuffer.getInt();
+                if (length > bytes.length) {
+                    bytes = new byte[length];
+                }
+                vocabBuffer.get(bytes, 0, length);
+                words[id] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+            // already sorted, the order is kept
+            vocab = Vocab.sort(words, counts, vocabSize, 0);
+        }
+    }
+
+    /** @return true if a checkpoint has been written in the directory */
+    public static boolean exists(final Path directory)
+    {
+        return Files.isRegularFile(directory.resolve(FILE_NAME));
+    }
+
+    /**
+     * Read the header and the vocabulary of the last checkpoint of a directory,
+     * weights are read later by the trainer.
+     */
+    public static Checkpoint read(final Path directory) throws IOException
+    {
+        return new Checkpoint(directory.resolve(FILE_NAME));
+    }
+
+    /** @return Vocabulary of the training */
+    public Vocab vocab()
+    {
+        return vocab;
+    }
+
+    /** @return true if the weights of hierarchical softmax are saved */
+    boolean hasSyn1()
+    {
+        return (flags & SYN1) != 0;
+    }
+
+    /** @return true if the weights of negative sampling are saved */
+    boolean hasSyn1neg()
+    {
+        return (flags & SYN1NEG) != 0;
+    }
+
+    /**
+     * Copy the saved weights in the matrices of a trainer with the same
+     * vocabulary.
+     *
+     * @param syn1    null to skip
+     * @param syn1neg null to skip
+     */
+    void readWeights(final double[][] syn0, final double[][] syn1, final double[][] syn1neg) throws IOException
+    {
+        Preconditions.checkArgument(syn0.length == vocab.size(), "Bad vocabulary size %s", syn0.length);
+        final int[] rows = new int[vocab.size()];
+        for (int id = 0; id < rows.length; id++) {
+            rows[id] = id;
+        }
+        readWeights(rows, syn0, syn1, syn1neg);
+    }
+
+    /**
+     * Copy the saved weights in the matrices of a trainer, row by row.
+     *
+     * @param rows    destination row of each id of the checkpoint, -1 to skip
+     * @param syn1    null to skip
+     * @param syn1neg null to skip
+     */
+    void readWeights(final int[] rows, final double[][] syn0, final double[][] syn1, final double[][] syn1neg)
+            throws IOException
+    {
+        final int vocabSize = vocab.size();
+        final double[][][] matrices = { syn0, hasSyn1() ? syn1 : null, hasSyn1neg() ? syn1neg : null };
+        final boolean[] saved = { true, hasSyn1(), hasSyn1neg() };
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long position = weightsStart;
+            for (int m = 0; m < matrices.length; m++) {
+                if (!saved[m]) {
+                    continue;
+                }
+                final double[][] matrix = matrices[m];
+                if (matrix != null) {
+                    for (Window window : windows(vocabSize, layerSize, position)) {
+                        final DoubleBuffer buffer = channel
+                                .map(FileChannel.MapMode.READ_ONLY, window.start, window.bytes)
+                                .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+                        for (int id = window.from; id < window.to; id++) {
+                            if (rows[id] >= 0) {
+                                buffer.get((id - window.from) * layerSize, matrix[rows[id]]);
+                            }
+                        }
+                    }
+                }
+                // saved layers follow each other, read or not
+                position += (long) vocabSize * layerSize * Double.BYTES;
+            }
+        }
+    }
+
+    /** Rows of a matrix mapped at once */
+    private static class Window
+    {
+        final int from;
+        final int to;
+        final long start;
+        final long bytes;
+
+        Window(int from, int to, long start, long bytes)
+        {
+            this.from = from;
+            this.to = to;
+            this.start = start;
+            this.bytes = bytes;
+        }
+    }
+
+    /** @return Windows of whole rows covering a matrix starting at position */
+    private static List<Window> windows(final int rows, final int layerSize, final long position)
+    {
+        final long rowBytes = (long) layerSize * Double.BYTES;
+        final int step = (int) Math.max(1, WINDOW_BYTES / rowBytes);
+        final List<Window> windows = new ArrayList<>();
+        for (int from = 0; from < rows; from += step) {
+            final int to = Math.min(rows, from + step);
+            windows.add(new Window(from, to, position + from * rowBytes, (to - from) * rowBytes));
+        }
+        return windows;
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, long position)
+            throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            final int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += n;
+        }
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer, long position)
+            throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Writes a checkpoint in two steps: the constructor writes the vocabulary and
+     * maps the windows of the weights before the training is paused, then
+     * {@link #write} copies the header and the rows of the weights in the mapped
+     * memory while it is paused, flushed to disk by {@link #commit()} after it
+     * goes on.
+     */
+    static class Writer implements Closeable
+    {
+        private final Path directory;
+        private final Path tmp;
+        private final FileChannel channel;
+        private final int vocabSize;
+        private final int layerSize;
+        private final int flags;
+        private final int workers;
+        private final long vocabStart;
+        /** Windows of the rows of each matrix saved, one after the other */
+        private final List<Window> windows = new ArrayList<>();
+        /** Mapped memory of each window */
+        private final List<MappedByteBuffer> mapped = new ArrayList<>();
+
+        /**
+         * @param workers count of workers
+         * @param syn1    true if hierarchical softmax is used
+         * @param syn1neg true if negative sampling is used
+         */
+        Writer(final Path directory, final Vocab vocab, final int layerSize, final int workers, final boolean syn1,
+                final boolean syn1neg) throws IOException
+        {
+            this.directory = directory;
+            this.tmp = directory.resolve(FILE_NAME + ".tmp");
+            this.vocabSize = vocab.size();
+            this.layerSize = layerSize;
+            this.workers = workers;
+            this.flags = (syn1 ? SYN1 : 0) | (syn1neg ? SYN1NEG : 0);
+            final int matrices = 1 + (syn1 ? 1 : 0) + (syn1neg ? 1 : 0);
+            this.vocabStart = HEADER_BYTES + (long) workers * Long.BYTES
+                    + (long) matrices * vocabSize * layerSize * Double.BYTES;
+            this.channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                long position = vocabStart;
+                ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+                for (int id = 0; id < vocabSize; id++) {
+                    final byte[] bytes = vocab.word(id).getBytes(StandardCharsets.UTF_8);
+                    if (buffer.remaining() < Long.BYTES + Integer.BYTES + bytes.length) {
+                        buffer.flip();
+                        writeFully(channel, buffer, position);
+                        position += buffer.limit();
+                        buffer.clear();
+                        if (buffer.capacity() < Long.BYTES + Integer.BYTES + bytes.length) {
+                            buffer = ByteBuffer.allocate(Long.BYTES + Integer.BYTES + bytes.length)
+                                    .order(ByteOrder.LITTLE_ENDIAN);
+                        }
+                    }
+                    buffer.putLong(vocab.count(id)).putInt(bytes.length).put(bytes);
+                }
+                buffer.flip();
+                writeFully(channel, buffer, position);
+                // the file already ends after the weights, mapping does not grow it
+                position = HEADER_BYTES + (long) workers * Long.BYTES;
+                for (int m = 0; m < matrices; m++) {
+                    for (Window window : windows(vocabSize, layerSize, position)) {
+                        windows.add(window);
+                        mapped.add(channel.map(FileChannel.MapMode.READ_WRITE, window.start, window.bytes));
+                    }
+                    position += (long) vocabSize * layerSize * Double.BYTES;
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Write the state of the training, called while the workers are paused,
+         * only copies the rows in the windows mapped by the constructor.
+         *
+         * @param syn1    null if not used
+         * @param syn1neg null if not used
+         */
+        void write(final int iteration, final long offset, final long numTrainedTokens,
+                final long actualWordCount, final double alpha, final long[] randoms, final double[][] syn0,
+                final double[][] syn1, final double[][] syn1neg) throws IOException
+        {
+            Preconditions.checkArgument(randoms.length == workers, "Bad count of workers %s", randoms.length);
+            Preconditions.checkArgument((syn1 != null) == ((flags & SYN1) != 0)
+                    && (syn1neg != null) == ((flags & SYN1NEG) != 0), "Output layers not those of the writer");
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + workers * Long.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(vocabSize).putInt(layerSize).putInt(flags).putInt(workers)
+                    .putInt(iteration).putInt(0);
+            header.putLong(numTrainedTokens).putLong(actualWordCount).putDouble(alpha).putLong(offset)
+                    .putLong(vocabStart);
+            header.position(HEADER_BYTES);
+            for (long random : randoms) {
+                header.putLong(random);
+            }
+            header.flip();
+            writeFully(channel, header, 0);
+
+            int w = 0;
+            for (double[][] matrix : new double[][][] { syn0, syn1, syn1neg }) {
+                if (matrix == null) {
+                    continue;
+                }
+                // windows of a matrix cover its rows, the next window is in the next matrix
+                int to = 0;
+                while (to < vocabSize) {
+                    final Window window = windows.get(w);
+                    final DoubleBuffer buffer = mapped.get(w).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+                    for (int row = window.from; row < window.to; row++) {
+                        buffer.put((row - window.from) * layerSize, matrix[row]);
+                    }
+                    to = window.to;
+                    w++;
+                }
+            }
+        }
+
+        /** Flush the file to disk, and replace the last checkpoint */
+        void commit() throws IOException
+        {
+            for (MappedByteBuffer window : mapped) {
+                window.force();
+            }
+            channel.force(true);
+            channel.close();
+            Files.move(tmp, directory.resolve(FILE_NAME), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            channel.close();
+        }
+    }
+}
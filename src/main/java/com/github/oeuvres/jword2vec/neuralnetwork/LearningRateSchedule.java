@@ -0,0 +1,46 @@
+package com.github.oeuvres.jword2vec.neuralnetwork;
+
+/**
+ * Schedules of the learning rate along the training, computed by each worker
+ * from the progress of all of them
+ */
+public enum LearningRateSchedule {
+	/** Decreases linearly towards 0, as the C version */
+	LINEAR {
+		@Override double factor(double progress) {
+			return 1 - progress;
+		}
+	},
+	/** Increases linearly during the first 5% of the training, then decreases linearly towards 0 */
+	WARMUP {
+		@Override double factor(double progress) {
+			if (progress < WARMUP_PROGRESS)
+				return progress / WARMUP_PROGRESS;
+			return (1 - progress) / (1 - WARMUP_PROGRESS);
+		}
+	},
+	/** Decreases along a half cosine, slowly at the beginning and at the end */
+	COSINE {
+		@Override double factor(double progress) {
+			return 0.5 * (1 + Math.cos(Math.PI * progress));
+		}
+	},
+	;
+
+	/** Part of the training with an increasing learning rate, for {@link #WARMUP} */
+	private static final double WARMUP_PROGRESS = 0.05;
+	/** Minimum learning rate, relative to the initial one */
+	private static final double MIN_FACTOR = 0.0001;
+
+	/** @return Factor of the initial learning rate, for a progress in [0, 1] */
+	abstract double factor(double progress);
+
+	/**
+	 * @param initial Initial learning rate
+	 * @param progress Part of the training done, in [0, 1]
+	 * @return Learning rate, never less than a small part of the initial one
+	 */
+	public double rate(double initial, double progress) {
+		return initial * Math.max(factor(Math.min(progress, 1)), MIN_FACTOR);
+	}
+}
@@ -0,0 +1,173 @@
+package com.github.oeuvres.jword2vec.neuralnetwork;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * {@link ParameterTransport} through a memory mapped file, shared by processes
+ * on the same host. Each process writes its values in its own slot of the file,
+ * then sums the slots of all of them. Two counters by process, the last round
+ * written and the last round read, tell the others when the slots are ready,
+ * and when they may be written again.
+ * <p>
+ * The file is created by the process of rank 0, and must not exist before: a
+ * file left by a crashed training would hold the counters of its last round.
+ * The others wait for it. It is deleted when the process of rank 0 is closed,
+ * the others keep their mapping.
+ */
+public final class MappedFileTransport implements ParameterTransport
+{
+    /** Count of values of a slot, longer arrays are summed by parts */
+    private static final int SLOT_LENGTH = 1 << 16;
+    /** Bytes by process for its counters, a cache line */
+    private static final int COUNTERS_BYTES = 64;
+    /** Delay between two checks of the counters of the others, after spinning */
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    /** Count of checks of the counters before parking */
+    private static final int SPINS = 1_000;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class,
+            ByteOrder.nativeOrder());
+
+    private final Path file;
+    private final int rank;
+    private final int size;
+    private final MappedByteBuffer mapped;
+    /** Slot of each process */
+    private final DoubleBuffer[] slots;
+    private final long timeoutNanos;
+    /** Count of rounds done */
+    private long round;
+
+    private MappedFileTransport(Path file, int rank, int size, MappedByteBuffer mapped, long timeoutNanos)
+    {
+        this.file = file;
+        this.rank = rank;
+        this.size = size;
+        this.mapped = mapped;
+        this.timeoutNanos = timeoutNanos;
+        mapped.order(ByteOrder.nativeOrder());
+        this.slots = new DoubleBuffer[size];
+        for (int r = 0; r < size; r++)
+            slots[r] = mapped.slice(size * COUNTERS_BYTES + r * SLOT_LENGTH * Double.BYTES,
+                    SLOT_LENGTH * Double.BYTES).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    }
+
+    /**
+     * Open the file shared by all the processes
+     * 
+     * @param file    File created by the process of rank 0, must not exist
+     * @param rank    Index of this process
+     * @param size    Count of processes
+     * @param timeout Delay to wait for the file, and for the others at each round
+     */
+    public static MappedFileTransport open(Path file, int rank, int size, long timeout, TimeUnit unit)
+            throws IOException, InterruptedException
+    {
+        Preconditions.checkArgument(size > 0, "Value must be positive");
+        Preconditions.checkArgument(rank >= 0 && rank < size, "Rank %s not in [0, %s[", rank, size);
+        final long bytes = (long) size * (COUNTERS_BYTES + SLOT_LENGTH * Double.BYTES);
+        final long timeoutNanos = unit.toNanos(timeout);
+        if (rank == 0) {
+            if (Files.exists(file))
+                throw new FileAlreadyExistsException(file.toString());
+            // others never see a file of another size
+            final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.allocate(1), bytes - 1);
+            }
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            final long deadline = System.nanoTime() + timeoutNanos;
+            while (!Files.exists(file) || Files.size(file) < bytes) {
+                if (System.nanoTime() > deadline)
+                    throw new IOException("No file " + file + " of " + size + " processes");
+                Thread.sleep(10);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            return new MappedFileTransport(file, rank, size, mapped, timeoutNanos);
+        }
+    }
+
+    @Override
+    public int rank()
+    {
+        return rank;
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public void allReduce(double[] data, int length) throws IOException, InterruptedException
+    {
+        for (int from = 0; from < length; from += SLOT_LENGTH)
+            reduce(data, from, Math.min(SLOT_LENGTH, length - from));
+    }
+
+    /** One round, on a part of the array which fits in a slot */
+    private void reduce(double[] data, int from, int length) throws IOException, InterruptedException
+    {
+        // slots of the last round read by all
+        await(Long.BYTES, round);
+        round++;
+        slots[rank].put(0, data, from, length);
+        LONGS.setRelease(mapped, rank * COUNTERS_BYTES, round);
+        await(0, round);
+        // by rank, so that the sum is the same in all processes
+        for (int i = 0; i < length; i++) {
+            double sum = 0;
+            for (int r = 0; r < size; r++)
+                sum += slots[r].get(i);
+            data[from + i] = sum;
+        }
+        LONGS.setRelease(mapped, rank * COUNTERS_BYTES + Long.BYTES, round);
+    }
+
+    /** Wait until a counter of all processes has reached a round */
+    private void await(int counter, long target) throws IOException, InterruptedException
+    {
+        final long deadline = System.nanoTime() + timeoutNanos;
+        for (int r = 0; r < size; r++) {
+            int spins = 0;
+            while ((long) LONGS.getAcquire(mapped, r * COUNTERS_BYTES + counter) < target) {
+                if (++spins < SPINS) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                if (System.nanoTime() > deadline)
+                    throw new IOException("Process " + r + " not responding", new TimeoutException());
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (rank == 0)
+            Files.deleteIfExists(file);
+    }
+}
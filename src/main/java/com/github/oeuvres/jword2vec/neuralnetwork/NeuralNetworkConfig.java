@@ -1,10 +1,9 @@
 package com.github.oeuvres.jword2vec.neuralnetwork;
 
-import com.github.oeuvres.jword2vec.HuffmanCoding.HuffmanNode;
+import com.github.oeuvres.jword2vec.HuffmanCoding.Codes;
 import com.github.oeuvres.jword2vec.VecTrainerBuilder.TrainingProgressListener;
-import com.google.common.collect.ImmutableMultiset;
-
-import java.util.Map;
+import com.github.oeuvres.jword2vec.Vocab;
+import com.google.common.hash.Hasher;
 
 /** Fixed configuration for training the neural network */
 public class NeuralNetworkConfig {
@@ -18,8 +17,9 @@ public class NeuralNetworkConfig {
 	
 	final double initialLearningRate;
 	final double downSampleRate;
+	final LearningRateSchedule schedule;
 	
-	/** Constructor */
+	/** Constructor, with a {@link LearningRateSchedule#LINEAR} schedule */
 	public NeuralNetworkConfig(
 			NeuralNetworkType type,
 			int numThreads,
@@ -30,6 +30,22 @@ public NeuralNetworkConfig(
 			double downSampleRate,
 			double initialLearningRate,
 			boolean useHierarchicalSoftmax) {
+		this(type, numThreads, iterations, layerSize, windowSize, negativeSamples, downSampleRate,
+				initialLearningRate, useHierarchicalSoftmax, LearningRateSchedule.LINEAR);
+	}
+	
+	/** Constructor */
+	public NeuralNetworkConfig(
+			NeuralNetworkType type,
+			int numThreads,
+			int iterations,
+			int layerSize,
+			int windowSize,
+			int negativeSamples,
+			double downSampleRate,
+			double initialLearningRate,
+			boolean useHierarchicalSoftmax,
+			LearningRateSchedule schedule) {
 		this.type = type;
 		this.iterations = iterations;
 		this.numThreads = numThreads;
@@ -39,15 +55,30 @@ public NeuralNetworkConfig(
 		this.useHierarchicalSoftmax = useHierarchicalSoftmax;
 		this.initialLearningRate = initialLearningRate;
 		this.downSampleRate = downSampleRate;
+		this.schedule = schedule;
 	}
 
 	/** @return {@link NeuralNetworkTrainer} */
-	public NeuralNetworkTrainer createTrainer(ImmutableMultiset<String> vocab, Map<String, HuffmanNode> huffmanNodes, TrainingProgressListener listener) {
-		return type.createTrainer(this, vocab, huffmanNodes, listener);
+	public NeuralNetworkTrainer createTrainer(Vocab vocab, Codes codes, TrainingProgressListener listener) {
+		return type.createTrainer(this, vocab, codes, listener);
+	}
+	
+	/** Put all the fields in a hash, to check that processes train with the same configuration */
+	void hash(Hasher hasher) {
+		hasher.putInt(type.ordinal())
+				.putInt(numThreads)
+				.putInt(iterations)
+				.putInt(layerSize)
+				.putInt(windowSize)
+				.putInt(negativeSamples)
+				.putBoolean(useHierarchicalSoftmax)
+				.putDouble(initialLearningRate)
+				.putDouble(downSampleRate)
+				.putInt(schedule.ordinal());
 	}
 	
 	@Override public String toString() {
-		return String.format("%s with %s threads, %s iterations[%s layer size, %s window, %s hierarchical softmax, %s negative samples, %s initial learning rate, %s down sample rate]",
+		return String.format("%s with %s threads, %s iterations[%s layer size, %s window, %s hierarchical softmax, %s negative samples, %s initial learning rate, %s schedule, %s down sample rate]",
 				type.name(),
 				numThreads,
 				iterations,
@@ -56,6 +87,7 @@ public NeuralNetworkTrainer createTrainer(ImmutableMultiset<String> vocab, Map<S
 				useHierarchicalSoftmax ? "using" : "not using",
 				negativeSamples, 
 				initialLearningRate,
+				schedule,
 				downSampleRate
 			);
 	}
@@ -1,29 +1,62 @@
 package com.github.oeuvres.jword2vec.neuralnetwork;
 
-import com.github.oeuvres.jword2vec.HuffmanCoding.HuffmanNode;
+import com.github.oeuvres.jword2vec.CorpusFile;
+import com.github.oeuvres.jword2vec.HuffmanCoding.Codes;
+import com.github.oeuvres.jword2vec.TextCorpus;
 import com.github.oeuvres.jword2vec.VecTrainerBuilder.TrainingProgressListener;
 import com.github.oeuvres.jword2vec.VecTrainerBuilder.TrainingProgressListener.Stage;
+import com.github.oeuvres.jword2vec.Vocab;
 import com.github.oeuvres.jword2vec.util.CallableVoid;
+import com.github.oeuvres.jword2vec.util.Kernels;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Multiset;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Streams;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /** Parent class for training word2vec's neural network */
 public abstract class NeuralNetworkTrainer
 {
     /** Sentences longer than this are broken into multiple chunks */
     private static final int MAX_SENTENCE_LENGTH = 1_000;
+    /** Count of sentences in a batch read from a stream */
+    private static final int BATCH_SIZE = 256;
+    /** Count of batches in the ring between the reader of a stream and the workers, by thread */
+    private static final int BATCHES_BY_THREAD = 4;
+    /**
+     * Count of byte ranges of a file by thread and by iteration, small enough to
+     * keep all threads busy to the end
+     */
+    private static final int CHUNKS_BY_THREAD = 64;
+    /** Count of weights averaged at once with the other processes */
+    private static final int AVERAGE_BLOCK = 1 << 16;
+    /** Parts of 16 bits of the hash compared by {@link #agree()} */
+    private static final int HASH_PARTS = Long.SIZE / 16;
 
     /** Boundary for maximum exponent allowed */
     static final int MAX_EXP = 6;
@@ -42,10 +75,21 @@
 
     private static final int TABLE_SIZE = (int) 1e8;
 
-    private final TrainingProgressListener listener;
+    /** Loops on the vectors of the network */
+    static final Kernels KERNELS = Kernels.get();
+
+    /** Progress of the stages, and metrics of the training */
+    private TrainingMonitor monitor;
 
     final NeuralNetworkConfig config;
-    final Map<String, HuffmanNode> huffmanNodes;
+    /** Vocabulary, words by id */
+    final Vocab vocab;
+    /** Start of the Huffman code of each word in code and point */
+    final int[] codeOffsets;
+    /** Huffman codes of all words, packed */
+    final byte[] code;
+    /** Huffman points of all words, packed */
+    final int[] point;
     private final int vocabSize;
     final int layer1_size;
     final int window;
@@ -53,7 +97,7 @@
      * In the C version, this includes the </s> token that replaces a newline
      * character
      */
-    int numTrainedTokens;
+    long numTrainedTokens;
 
     /* The following includes shared state that is updated per worker thread */
 
@@ -61,10 +105,9 @@
      * To be precise, this is the number of words in the training data that exist in
      * the vocabulary which have been processed so far. It includes words that are
      * discarded from sampling. Note that each word is processed once per iteration.
+     * Workers add their own counts by batches, without contention.
      */
-    protected final AtomicInteger actualWordCount;
-    /** Learning rate, affects how fast values in the layers get updated */
-    volatile double alpha;
+    protected final LongAdder actualWordCount;
     /**
      * This contains the outer layers of the neural network First dimension is the
      * vocab, second is the layer
@@ -73,28 +116,59 @@
     /** This contains hidden layers of the neural network */
     final double[][] syn1;
     /** This is used for negative sampling */
-    private final double[][] syn1neg;
+    final double[][] syn1neg;
     /** Used for negative sampling */
     private final int[] table;
+    /**
+     * Down sampling of frequent words, by id: a word is kept if the 16 low bits
+     * of the next random value are at most its threshold. Null if there is no
+     * down sampling, computed when the training starts, once the count of tokens
+     * is known.
+     */
+    private int[] keepThresholds;
     long startNano;
 
-    NeuralNetworkTrainer(NeuralNetworkConfig config, Multiset<String> vocab, Map<String, HuffmanNode> huffmanNodes,
-            TrainingProgressListener listener)
+    /**
+     * Held for reading by a worker while it processes a chunk, for writing by the
+     * checkpoint, fair so that a waiting checkpoint stops the next chunks
+     */
+    private final ReentrantReadWriteLock chunkLock = new ReentrantReadWriteLock(true);
+    /** Directory of the checkpoints, null if none */
+    private Path checkpointDirectory;
+    /** Delay between two checkpoints */
+    private long checkpointMillis;
+    /** Error while writing a checkpoint, stops the training */
+    private volatile Exception checkpointError;
+    /** Checkpoint to resume, null to start a new training */
+    private Checkpoint resume;
+    /** Exchange of the weights with the other processes, null if none */
+    private ParameterTransport transport;
+    /** Delay between two averages of the weights of all processes */
+    private long averageMillis;
+    /** Count of words processed by the other processes, at the last average */
+    private volatile long remoteWordCount;
+    /** Error while averaging the weights, stops the training */
+    private volatile Exception averageError;
+
+    NeuralNetworkTrainer(NeuralNetworkConfig config, Vocab vocab, Codes codes, TrainingProgressListener listener)
     {
         this.config = config;
-        this.huffmanNodes = huffmanNodes;
-        this.listener = listener;
-        this.vocabSize = huffmanNodes.size();
-        this.numTrainedTokens = vocab.size();
+        this.vocab = vocab;
+        this.codeOffsets = codes.offsets;
+        this.code = codes.code;
+        this.point = codes.point;
+        this.monitor = new TrainingMonitor(listener);
+        this.vocabSize = vocab.size();
+        this.numTrainedTokens = vocab.total();
         this.layer1_size = config.layerSize;
         this.window = config.windowSize;
 
-        this.actualWordCount = new AtomicInteger();
-        this.alpha = config.initialLearningRate;
+        this.actualWordCount = new LongAdder();
 
         this.syn0 = new double[vocabSize][layer1_size];
-        this.syn1 = new double[vocabSize][layer1_size];
-        this.syn1neg = new double[vocabSize][layer1_size];
+        // output layers only if used
+        this.syn1 = new double[config.useHierarchicalSoftmax ? vocabSize : 0][layer1_size];
+        this.syn1neg = new double[config.negativeSamples > 0 ? vocabSize : 0][layer1_size];
         this.table = new int[TABLE_SIZE];
 
         initializeSyn0();
@@ -106,23 +180,19 @@ private void initializeUnigramTable()
         long trainWordsPow = 0;
         double power = 0.75;
 
-        for (HuffmanNode node : huffmanNodes.values()) {
-            trainWordsPow += Math.pow(node.count, power);
+        for (int word = 0; word < vocabSize; word++) {
+            trainWordsPow += Math.pow(vocab.count(word), power);
         }
 
-        Iterator<HuffmanNode> nodeIter = huffmanNodes.values().iterator();
-        HuffmanNode last = nodeIter.next();
-        double d1 = Math.pow(last.count, power) / trainWordsPow;
-        int i = 0;
+        int word = 0;
+        double d1 = Math.pow(vocab.count(word), power) / trainWordsPow;
         for (int a = 0; a < TABLE_SIZE; a++) {
-            table[a] = i;
+            table[a] = word;
             if (a / (double) TABLE_SIZE > d1) {
-                i++;
-                HuffmanNode next = nodeIter.hasNext() ? nodeIter.next() : last;
+                if (word < vocabSize - 1)
+                    word++;
 
-                d1 += Math.pow(next.count, power) / trainWordsPow;
-
-                last = next;
+                d1 += Math.pow(vocab.count(word), power) / trainWordsPow;
             }
         }
     }
@@ -130,7 +200,7 @@ private void initializeUnigramTable()
     private void initializeSyn0()
     {
         long nextRandom = 1;
-        for (int a = 0; a < huffmanNodes.size(); a++) {
+        for (int a = 0; a < vocabSize; a++) {
             // Consume a random for fun
             // Actually we do this to use up the injected </s> token
             nextRandom = incrementRandom(nextRandom);
@@ -141,6 +211,144 @@ private void initializeSyn0()
         }
     }
 
+    /**
+     * Save the state of the training at regular intervals in a directory, see
+     * {@link Checkpoint}. The workers are paused between two chunks of sentences,
+     * only while the weights are copied in memory.
+     * 
+     * @param directory Directory of the checkpoints, created if needed
+     * @param interval  Delay between two checkpoints
+     */
+    public void useCheckpoints(Path directory, long interval, TimeUnit unit) throws IOException
+    {
+        Preconditions.checkArgument(interval > 0, "Value must be positive");
+        this.checkpointDirectory = Files.createDirectories(directory);
+        this.checkpointMillis = unit.toMillis(interval);
+    }
+
+    /**
+     * Report the progress and the metrics of the training through a monitor,
+     * instead of the progress only, to the listener given at creation
+     */
+    public void monitor(TrainingMonitor monitor)
+    {
+        this.monitor = Preconditions.checkNotNull(monitor);
+    }
+
+    /**
+     * Train with other processes, each one on its own shard of the corpus. The
+     * weights of all the processes are averaged at regular intervals, and at the
+     * end, so that they all end with the same model. The workers are paused
+     * while the weights are exchanged.
+     * <p>
+     * All the processes must have the same vocabulary, which gives the same
+     * Huffman coding, and the same configuration, they are checked when the
+     * training starts. The learning rate follows the count of words of all the
+     * processes, known at the last average.
+     * 
+     * @param transport Connection to the other processes, not closed
+     * @param interval  Delay between two averages
+     */
+    public void distribute(ParameterTransport transport, long interval, TimeUnit unit)
+    {
+        Preconditions.checkArgument(interval > 0, "Value must be positive");
+        this.transport = Preconditions.checkNotNull(transport);
+        this.averageMillis = unit.toMillis(interval);
+    }
+
+    /**
+     * Resume the training from a checkpoint. The trainer must have been created
+     * with the same configuration, and with the vocabulary of the checkpoint.
+     */
+    public void resume(Checkpoint checkpoint) throws IOException
+    {
+        Preconditions.checkArgument(checkpoint.vocab().size() == vocabSize, "Checkpoint of another vocabulary");
+        Preconditions.checkArgument(checkpoint.layerSize == layer1_size, "Checkpoint layer size %s, expected %s",
+                checkpoint.layerSize, layer1_size);
+        Preconditions.checkArgument(checkpoint.hasSyn1() == config.useHierarchicalSoftmax
+                && checkpoint.hasSyn1neg() == config.negativeSamples > 0, "Checkpoint of another output layer");
+        checkpoint.readWeights(syn0, syn1, syn1neg);
+        this.actualWordCount.reset();
+        this.actualWordCount.add(checkpoint.actualWordCount);
+        this.resume = checkpoint;
+    }
+
+    /**
+     * Start from the vectors of a previous model, to train it again on new
+     * sentences. Words of the vocabulary not in the model keep their random
+     * initialization.
+     * 
+     * @param words     Words of the model
+     * @param layerSize Size of the vectors, the same as the configuration
+     * @param vectors   Vectors of the words, one after the other
+     */
+    public void initialize(String[] words, int layerSize, DoubleBuffer vectors)
+    {
+        Preconditions.checkArgument(layerSize == layer1_size, "Model layer size %s, expected %s", layerSize,
+                layer1_size);
+        for (int i = 0; i < words.length; i++) {
+            final int id = vocab.id(words[i]);
+            if (id >= 0)
+                vectors.get(i * layerSize, syn0[id]);
+        }
+    }
+
+    /**
+     * Start from the weights of the final checkpoint of a previous training, to
+     * train it again on new sentences. The output weights of negative sampling
+     * are kept, those of hierarchical softmax are not, the nodes of the new
+     * Huffman tree are not those of the previous one.
+     */
+    public void initialize(Checkpoint checkpoint) throws IOException
+    {
+        Preconditions.checkArgument(checkpoint.layerSize == layer1_size, "Checkpoint layer size %s, expected %s",
+                checkpoint.layerSize, layer1_size);
+        final Vocab previous = checkpoint.vocab();
+        final int[] rows = new int[previous.size()];
+        for (int id = 0; id < rows.length; id++)
+            rows[id] = vocab.id(previous.word(id));
+        checkpoint.readWeights(rows, syn0, null, config.negativeSamples > 0 ? syn1neg : null);
+    }
+
+    /**
+     * Compute once the probability to keep each word of the vocabulary, as in the
+     * C version, scaled to the 16 bits compared with the random values.
+     */
+    private void initializeSubsampling()
+    {
+        if (config.downSampleRate <= 0) {
+            keepThresholds = null;
+            return;
+        }
+        final double sample = config.downSampleRate * numTrainedTokens;
+        keepThresholds = new int[vocabSize];
+        for (int word = 0; word < vocabSize; word++) {
+            final long count = vocab.count(word);
+            final double keep = (Math.sqrt(count / sample) + 1) * sample / count;
+            // r / 65536 <= keep, for an integer r, is r <= floor(keep * 65536)
+            keepThresholds[word] = (int) Math.min(Math.floor(keep * 65_536), 65_536);
+        }
+    }
+
+    /**
+     * @param currentActual Count of words processed by all workers
+     * @return Learning rate of the schedule
+     */
+    double learningRate(long currentActual)
+    {
+        return config.schedule.rate(config.initialLearningRate,
+                (currentActual + remoteWordCount) / (double) (config.iterations * numTrainedTokens));
+    }
+
+    /**
+     * @param currentActual Count of words processed by all workers
+     * @return Part of the training done
+     */
+    double progress(long currentActual)
+    {
+        return (currentActual + remoteWordCount) / (double) (config.iterations * numTrainedTokens + 1);
+    }
+
     /** @return Next random value to use */
     static long incrementRandom(long r)
     {
@@ -157,39 +365,209 @@ static long incrementRandom(long r)
         double[][] vectors();
     }
 
-    /** @return Trained NN model */
-    public NeuralNetworkModel train(Iterable<List<String>> sentences) throws InterruptedException
+    /**
+     * Sentences are iterated again for each iteration, and pulled by the workers
+     * in small batches, they are not held in memory.
+     * 
+     * @return Trained NN model
+     */
+    public NeuralNetworkModel train(final Iterable<List<String>> sentences) throws InterruptedException
+    {
+        return train(sentences, Iterables.size(sentences));
+    }
+
+    /**
+     * Sentences are iterated again for each iteration, and pulled by the workers
+     * in small batches, they are not held in memory.
+     * 
+     * @param numSentences Count of sentences, if already known
+     * @return Trained NN model
+     */
+    public NeuralNetworkModel train(final Iterable<List<String>> sentences, long numSentences)
+            throws InterruptedException
     {
-        ListeningExecutorService ex = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(config.numThreads));
+        return train(() -> Streams.stream(sentences), numSentences);
+    }
 
-        int numSentences = Iterables.size(sentences);
+    /**
+     * Train on a stream of sentences, opened again for each iteration, and closed
+     * after. Sentences are encoded by a reader thread in a bounded ring of
+     * batches, consumed by the workers, they are not held in memory.
+     * 
+     * @param sentences    Supplier of a new stream of the same sentences
+     * @param numSentences Count of sentences in a stream
+     * @return Trained NN model
+     */
+    public NeuralNetworkModel train(final Supplier<? extends Stream<List<String>>> sentences, long numSentences)
+            throws InterruptedException
+    {
         numTrainedTokens += numSentences;
+        return train(new PipelineQueue(sentences));
+    }
 
-        // Partition the sentences evenly amongst the threads
-        Iterable<List<List<String>>> partitioned = Iterables.partition(sentences, numSentences / config.numThreads + 1);
+    /**
+     * Train on a text file, one sentence by line. The file is split in small byte
+     * ranges, streamed by the workers as they get free.
+     * 
+     * @param corpus       Text file
+     * @param numSentences Count of lines in the file
+     * @return Trained NN model
+     */
+    public NeuralNetworkModel train(final TextCorpus corpus, long numSentences) throws InterruptedException
+    {
+        numTrainedTokens += numSentences;
+        return train(new RangeQueue(corpus.split(numChunks()))
+        {
+            @Override
+            SentenceFeed feed(long start, long end) throws IOException
+            {
+                return new TextFeed(corpus.cursor(start, end));
+            }
+        });
+    }
 
-        try {
-            listener.update(Stage.TRAIN_NEURAL_NETWORK, 0.0);
-            for (int iter = config.iterations; iter > 0; iter--) {
-                List<CallableVoid> tasks = new ArrayList<>();
-                int i = 0;
-                for (final List<List<String>> batch : partitioned) {
-                    tasks.add(createWorker(i, iter, batch));
-                    i++;
-                }
+    /**
+     * Train on a corpus written as a binary file of word ids. The memory mapped
+     * file is split in small byte ranges, read by the workers as they get free.
+     * 
+     * @return Trained NN model
+     */
+    public NeuralNetworkModel train(final CorpusFile corpus) throws InterruptedException
+    {
+        // file ids to vocabulary indexes, -1 for words out of vocabulary
+        final int[] remap = new int[corpus.vocabSize()];
+        for (int id = 0; id < remap.length; id++)
+            remap[id] = vocab.id(corpus.word(id));
+        numTrainedTokens += corpus.sentences();
+        return train(new RangeQueue(corpus.split(numChunks()))
+        {
+            @Override
+            SentenceFeed feed(long start, long end) throws IOException
+            {
+                return new CorpusFeed(corpus.cursor(start, end), remap);
+            }
+        });
+    }
+
+    /** @return Count of byte ranges of a file for one iteration */
+    private int numChunks()
+    {
+        return config.numThreads * CHUNKS_BY_THREAD;
+    }
+
+    /**
+     * Run all the iterations with one long lived worker by thread, each pulling
+     * chunks from the queue until it is empty. A worker may go on with the next
+     * iteration while others finish the current one, no thread waits for another
+     * before the end.
+     */
+    private NeuralNetworkModel train(WorkQueue queue) throws InterruptedException
+    {
+        final List<Worker> workers = new ArrayList<>(config.numThreads);
+        for (int i = 0; i < config.numThreads; i++) {
+            final Worker worker = createWorker(i, queue);
+            if (resume != null && i < resume.randoms.length)
+                worker.nextRandom = resume.randoms[i];
+            workers.add(worker);
+        }
+        if (resume != null) {
+            numTrainedTokens = resume.numTrainedTokens;
+            queue.seek(resume.iteration, resume.offset);
+        }
+        initializeSubsampling();
 
-                List<ListenableFuture<?>> futures = new ArrayList<>(tasks.size());
-                for (CallableVoid task : tasks)
-                    futures.add(ex.submit(task));
+        final ListeningExecutorService ex = MoreExecutors
+                .listeningDecorator(Executors.newFixedThreadPool(config.numThreads));
+        ScheduledExecutorService checkpoints = null;
+        ScheduledExecutorService averages = null;
+        TrainingMonitor.Sampling sampling = null;
+        try {
+            monitor.update(Stage.TRAIN_NEURAL_NETWORK, 0.0);
+            if (transport != null) {
                 try {
-                    Futures.allAsList(futures).get();
-                } catch (ExecutionException e) {
-                    throw new IllegalStateException("Error training neural network", e.getCause());
+                    agree();
+                    average(false);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Error averaging weights with the other processes", e);
                 }
+                averages = Executors.newSingleThreadScheduledExecutor(
+                        new ThreadFactoryBuilder().setNameFormat("word2vec-average").setDaemon(true).build());
+                averages.scheduleWithFixedDelay(() -> {
+                    try {
+                        average(false);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (IOException | RuntimeException e) {
+                        // the others would wait for this process at the next average
+                        averageError = e;
+                        ex.shutdownNow();
+                    }
+                }, averageMillis, averageMillis, TimeUnit.MILLISECONDS);
+            }
+            queue.start();
+            sampling = monitor.start(this, queue, workers);
+            if (checkpointDirectory != null) {
+                checkpoints = Executors.newSingleThreadScheduledExecutor(
+                        new ThreadFactoryBuilder().setNameFormat("word2vec-checkpoint").setDaemon(true).build());
+                checkpoints.scheduleWithFixedDelay(() -> {
+                    try {
+                        checkpoint(queue, workers);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (IOException | RuntimeException e) {
+                        // stop the workers rather than training for hours without checkpoints
+                        checkpointError = e;
+                        ex.shutdownNow();
+                    }
+                }, checkpointMillis, checkpointMillis, TimeUnit.MILLISECONDS);
+            }
+            List<ListenableFuture<?>> futures = new ArrayList<>(config.numThreads);
+            for (Worker worker : workers)
+                futures.add(ex.submit(worker));
+            try {
+                Futures.allAsList(futures).get();
+            } catch (ExecutionException e) {
+                if (averageError != null)
+                    throw new IllegalStateException("Error averaging weights with the other processes", averageError);
+                if (checkpointError != null)
+                    throw new IllegalStateException("Error writing checkpoint", checkpointError);
+                if (e.getCause() instanceof IOException)
+                    throw new IllegalStateException("Error reading training data", e.getCause());
+                throw new IllegalStateException("Error training neural network", e.getCause());
             }
             ex.shutdown();
+            if (averages != null) {
+                // go on averaging until all the processes are done
+                averages.shutdown();
+                averages.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                if (averageError != null)
+                    throw new IllegalStateException("Error averaging weights with the other processes", averageError);
+                try {
+                    while (!average(true))
+                        ;
+                } catch (IOException e) {
+                    throw new IllegalStateException("Error averaging weights with the other processes", e);
+                }
+            }
+            if (checkpoints != null) {
+                // the final weights, to train the model again later
+                checkpoints.shutdown();
+                checkpoints.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                try {
+                    checkpoint(queue, workers);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Error writing checkpoint", e);
+                }
+            }
         } finally {
+            if (averages != null)
+                averages.shutdownNow();
+            if (checkpoints != null)
+                checkpoints.shutdownNow();
             ex.shutdownNow();
+            queue.close();
+            if (sampling != null)
+                sampling.stop();
         }
 
         return new NeuralNetworkModel()
@@ -208,8 +586,506 @@ public double[][] vectors()
         };
     }
 
-    /** @return {@link Worker} to process the given sentences */
-    abstract Worker createWorker(int randomSeed, int iter, Iterable<List<String>> batch);
+    /**
+     * Write a checkpoint. The vocabulary is written and the file mapped while the
+     * workers go on, they are paused only to copy their state and their weights
+     * in the mapped memory, flushed to disk after they go on.
+     */
+    private void checkpoint(WorkQueue queue, List<Worker> workers) throws IOException, InterruptedException
+    {
+        final boolean hs = config.useHierarchicalSoftmax;
+        final boolean negative = config.negativeSamples > 0;
+        try (Checkpoint.Writer writer = new Checkpoint.Writer(checkpointDirectory, vocab, layer1_size, workers.size(),
+                hs, negative)) {
+            chunkLock.writeLock().lockInterruptibly();
+            try {
+                final long[] randoms = new long[workers.size()];
+                for (int i = 0; i < randoms.length; i++)
+                    randoms[i] = workers.get(i).nextRandom;
+                writer.write(queue.iteration(), queue.offset(), numTrainedTokens, actualWordCount.sum(),
+                        learningRate(actualWordCount.sum()), randoms,
+                        syn0, hs ? syn1 : null, negative ? syn1neg : null);
+            } finally {
+                chunkLock.writeLock().unlock();
+            }
+            writer.commit();
+        }
+    }
+
+    /**
+     * Check that all the processes train the same network, from the vocabulary
+     * and all the fields of the configuration
+     */
+    private void agree() throws IOException, InterruptedException
+    {
+        final Hasher hasher = Hashing.murmur3_128().newHasher();
+        config.hash(hasher);
+        hasher.putInt(vocabSize);
+        for (int id = 0; id < vocabSize; id++)
+            hasher.putUnencodedChars(vocab.word(id)).putLong(vocab.count(id));
+        final long hash = hasher.hash().asLong();
+        // values are all equal only if the square of their sum is n times the sum of their squares,
+        // by parts of 16 bits of the hash, exact in doubles
+        final double[] sums = new double[HASH_PARTS * 2];
+        for (int i = 0; i < HASH_PARTS; i++) {
+            final double part = (hash >>> (16 * i)) & 0xFFFF;
+            sums[i * 2] = part;
+            sums[i * 2 + 1] = part * part;
+        }
+        transport.allReduce(sums, sums.length);
+        final int n = transport.size();
+        for (int i = 0; i < HASH_PARTS; i++)
+            if (sums[i * 2] * sums[i * 2] != n * sums[i * 2 + 1])
+                throw new IllegalStateException("Processes with another vocabulary or configuration");
+    }
+
+    /**
+     * Replace the weights with their average over all the processes, the workers
+     * are paused
+     * 
+     * @param done true if this process has finished its training
+     * @return true if all the processes have finished their training
+     */
+    private boolean average(boolean done) throws IOException, InterruptedException
+    {
+        chunkLock.writeLock().lockInterruptibly();
+        try {
+            final long local = actualWordCount.sum();
+            final double[] state = { done ? 1 : 0, local };
+            transport.allReduce(state, state.length);
+            remoteWordCount = (long) state[1] - local;
+            average(syn0);
+            if (config.useHierarchicalSoftmax)
+                average(syn1);
+            if (config.negativeSamples > 0)
+                average(syn1neg);
+            return state[0] == transport.size();
+        } finally {
+            chunkLock.writeLock().unlock();
+        }
+    }
+
+    /** Average a layer over all the processes, by blocks of rows */
+    private void average(double[][] layer) throws IOException, InterruptedException
+    {
+        final int rows = Math.max(1, AVERAGE_BLOCK / layer1_size);
+        final double[] block = new double[rows * layer1_size];
+        final double scale = 1.0 / transport.size();
+        for (int from = 0; from < vocabSize; from += rows) {
+            final int count = Math.min(rows, vocabSize - from);
+            for (int i = 0; i < count; i++)
+                System.arraycopy(layer[from + i], 0, block, i * layer1_size, layer1_size);
+            transport.allReduce(block, count * layer1_size);
+            for (int i = 0; i < count; i++)
+                for (int c = 0; c < layer1_size; c++)
+                    layer[from + i][c] = block[i * layer1_size + c] * scale;
+        }
+    }
+
+    /**
+     * Chunks of sentences of all the iterations, shared by the workers. Each one
+     * takes a new chunk when it has finished the last one, so that all are busy
+     * until the end of the training, whatever the length of the sentences.
+     */
+    abstract static class WorkQueue
+    {
+        /**
+         * Thread safe.
+         * 
+         * @return Feed of the next chunk of sentences, or null when all iterations
+         *         are done
+         */
+        abstract SentenceFeed next() throws IOException, InterruptedException;
+
+        /**
+         * Position of the next chunk, consistent only when no worker is processing a
+         * chunk.
+         * 
+         * @return Iteration of the next chunk, count of iterations when all are done
+         */
+        abstract int iteration();
+
+        /** @return Offset of the next chunk in its iteration, see {@link #iteration()} */
+        abstract long offset();
+
+        /** Start at the given position, called before {@link #start()} to resume */
+        abstract void seek(int iteration, long offset);
+
+        /** @return Count of chunks ready for the workers, for the metrics */
+        abstract int backlog();
+
+        /** Called before the workers are started */
+        void start()
+        {
+        }
+
+        /** Release the resources, called after the training */
+        void close()
+        {
+        }
+    }
+
+    /**
+     * Chunks are byte ranges of a file, for all iterations in a row, the next one
+     * is given by an atomic counter.
+     */
+    private abstract class RangeQueue extends WorkQueue
+    {
+        /** Starts of the ranges, and end of the last one */
+        private final long[] offsets;
+        /** Count of chunks by iteration */
+        private final int parts;
+        /** Index of the next chunk, across iterations */
+        private final AtomicInteger chunk = new AtomicInteger();
+        /** Chunk resumed from a checkpoint, -1 if none */
+        private int resumeChunk = -1;
+        /** Start of the resumed chunk */
+        private long resumeOffset;
+
+        RangeQueue(long[] offsets)
+        {
+            this.offsets = offsets;
+            this.parts = offsets.length - 1;
+        }
+
+        @Override
+        final SentenceFeed next() throws IOException
+        {
+            final int k = chunk.getAndIncrement();
+            if (k >= parts * config.iterations)
+                return null;
+            final int part = k % parts;
+            return feed(start(k), offsets[part + 1]);
+        }
+
+        /** @return Start of a chunk */
+        private long start(int k)
+        {
+            return k == resumeChunk ? resumeOffset : offsets[k % parts];
+        }
+
+        @Override
+        int iteration()
+        {
+            return Math.min(chunk.get(), parts * config.iterations) / parts;
+        }
+
+        @Override
+        long offset()
+        {
+            final int k = chunk.get();
+            return k >= parts * config.iterations ? 0 : start(k);
+        }
+
+        @Override
+        int backlog()
+        {
+            return Math.max(0, parts * config.iterations - chunk.get());
+        }
+
+        @Override
+        void seek(int iteration, long offset)
+        {
+            if (iteration >= config.iterations) {
+                chunk.set(parts * config.iterations);
+                return;
+            }
+            // the part containing the offset, started from the offset, the cursor skips to
+            // the next sentence as the interrupted training did
+            int part = 0;
+            while (part < parts - 1 && offsets[part + 1] <= offset)
+                part++;
+            resumeChunk = iteration * parts + part;
+            resumeOffset = offset;
+            chunk.set(resumeChunk);
+        }
+
+        /** @return Feed of the sentences beginning in [start, end) */
+        abstract SentenceFeed feed(long start, long end) throws IOException;
+    }
+
+    /**
+     * Sentences of a stream are read and encoded as word ids by a reader thread,
+     * in a bounded ring of batches, allocated once and reused, so that parsing
+     * overlaps with training. Workers wait only when the ring is empty. At its
+     * end, the stream is closed, and a new one opened for the next iteration.
+     */
+    private class PipelineQueue extends WorkQueue
+    {
+        private final Supplier<? extends Stream<List<String>>> sentences;
+        /** Batches ready to be filled by the reader */
+        private final BlockingQueue<IdBatch> free;
+        /** Batches filled, ready for the workers */
+        private final BlockingQueue<IdBatch> full;
+        /** Marks the end of the sentences, put back by each worker who takes it */
+        private final IdBatch end = new IdBatch();
+        private final Thread reader;
+        /** Error of the reader, thrown by the workers */
+        private volatile RuntimeException error;
+        /** Position of the first sentence to read */
+        private int startIteration;
+        private long startOffset;
+        /** Position of the sentence after the last batch taken by a worker */
+        private int iteration;
+        private long offset;
+
+        PipelineQueue(Supplier<? extends Stream<List<String>>> sentences)
+        {
+            this.sentences = sentences;
+            final int ringSize = config.numThreads * BATCHES_BY_THREAD;
+            this.free = new ArrayBlockingQueue<>(ringSize);
+            // room for the end mark
+            this.full = new ArrayBlockingQueue<>(ringSize + 1);
+            for (int i = 0; i < ringSize; i++)
+                free.add(new IdBatch());
+            this.reader = new Thread(this::read, "word2vec-reader");
+            reader.setDaemon(true);
+        }
+
+        @Override
+        void start()
+        {
+            reader.start();
+        }
+
+        /** Fill the batches with all the iterations of the stream */
+        private void read()
+        {
+            try {
+                for (int iter = startIteration; iter < config.iterations; iter++) {
+                    try (Stream<List<String>> stream = sentences.get()) {
+                        final Iterator<List<String>> it = stream.iterator();
+                        long sentence = 0;
+                        if (iter == startIteration) {
+                            for (; sentence < startOffset && it.hasNext(); sentence++)
+                                it.next();
+                        }
+                        IdBatch batch = free.take();
+                        while (it.hasNext()) {
+                            batch.add(it.next());
+                            sentence++;
+                            if (batch.size == BATCH_SIZE) {
+                                batch.position(iter, sentence);
+                                full.put(batch);
+                                batch = free.take();
+                            }
+                        }
+                        if (batch.size > 0) {
+                            batch.position(iter, sentence);
+                            full.put(batch);
+                        } else {
+                            free.put(batch);
+                        }
+                    }
+                }
+                full.put(end);
+            } catch (InterruptedException e) {
+                // closed before the end
+            } catch (RuntimeException e) {
+                error = e;
+                full.add(end);
+            }
+        }
+
+        /** Synchronized, so that the position of the last batch taken is known */
+        @Override
+        synchronized SentenceFeed next() throws InterruptedException
+        {
+            final IdBatch batch = full.take();
+            if (batch == end) {
+                full.put(end);
+                if (error != null)
+                    throw new IllegalStateException("Error reading sentences", error);
+                iteration = config.iterations;
+                offset = 0;
+                return null;
+            }
+            iteration = batch.iteration;
+            offset = batch.end;
+            return batch;
+        }
+
+        @Override
+        synchronized int iteration()
+        {
+            return iteration;
+        }
+
+        @Override
+        synchronized long offset()
+        {
+            return offset;
+        }
+
+        @Override
+        int backlog()
+        {
+            // without the marker of the end
+            final int size = full.size();
+            return full.contains(end) ? size - 1 : size;
+        }
+
+        @Override
+        void seek(int iteration, long offset)
+        {
+            this.startIteration = this.iteration = iteration;
+            this.startOffset = this.offset = offset;
+        }
+
+        @Override
+        void close()
+        {
+            reader.interrupt();
+        }
+
+        /** Sentences of word ids, packed in a reusable buffer */
+        private class IdBatch extends SentenceFeed
+        {
+            /** Ids of all the sentences */
+            private int[] words = new int[BATCH_SIZE * 32];
+            /** End of each sentence in words */
+            private final int[] ends = new int[BATCH_SIZE];
+            /** Count of sentences */
+            private int size;
+            /** Next sentence to read */
+            private int position;
+            /** Iteration of the sentences */
+            private int iteration;
+            /** Index in the stream of the sentence after the last one */
+            private long end;
+
+            /** Set the position of the batch in the stream */
+            void position(int iteration, long end)
+            {
+                this.iteration = iteration;
+                this.end = end;
+            }
+
+            /** Encode a sentence, without the words out of vocabulary */
+            void add(List<String> sentence)
+            {
+                int n = size == 0 ? 0 : ends[size - 1];
+                if (words.length < n + sentence.size())
+                    words = Arrays.copyOf(words, Math.max(words.length * 2, n + sentence.size()));
+                for (String s : sentence) {
+                    final int word = vocab.id(s);
+                    if (word < 0)
+                        continue;
+                    words[n++] = word;
+                }
+                ends[size++] = n;
+            }
+
+            @Override
+            boolean next()
+            {
+                if (position == size)
+                    return false;
+                final int from = position == 0 ? 0 : ends[position - 1];
+                length = ends[position++] - from;
+                if (ids.length < length)
+                    ids = new int[length];
+                System.arraycopy(words, from, ids, 0, length);
+                return true;
+            }
+
+            /** Give back the batch to the reader */
+            @Override
+            void release()
+            {
+                size = 0;
+                position = 0;
+                free.add(this);
+            }
+        }
+    }
+
+    /**
+     * A sequence of sentences, as word ids of the {@link Vocab}, read by one
+     * {@link Worker}. Words out of vocabulary are already removed.
+     */
+    abstract static class SentenceFeed
+    {
+        /** Indexes of the current sentence, array may be bigger than length */
+        int[] ids = new int[MAX_SENTENCE_LENGTH];
+        /** Count of indexes in the current sentence */
+        int length;
+
+        /** Append an index to the current sentence */
+        final void add(int idx)
+        {
+            if (length == ids.length)
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            ids[length++] = idx;
+        }
+
+        /** @return false when there is no more sentence */
+        abstract boolean next() throws IOException;
+
+        /** Called by the worker when it has read all the sentences */
+        void release()
+        {
+        }
+    }
+
+    /** Feed from a range of a {@link TextCorpus} */
+    private class TextFeed extends SentenceFeed
+    {
+        private final TextCorpus.Cursor cursor;
+
+        TextFeed(TextCorpus.Cursor cursor)
+        {
+            this.cursor = cursor;
+        }
+
+        @Override
+        boolean next() throws IOException
+        {
+            length = 0;
+            if (!cursor.next())
+                return false;
+            final String[] tokens = cursor.tokens();
+            for (int i = 0, n = cursor.length(); i < n; i++) {
+                final int word = vocab.id(tokens[i]);
+                if (word < 0)
+                    continue;
+                add(word);
+            }
+            return true;
+        }
+    }
+
+    /** Feed from a range of a {@link CorpusFile} */
+    private static class CorpusFeed extends SentenceFeed
+    {
+        private final CorpusFile.Cursor cursor;
+        private final int[] remap;
+
+        CorpusFeed(CorpusFile.Cursor cursor, int[] remap)
+        {
+            this.cursor = cursor;
+            this.remap = remap;
+        }
+
+        @Override
+        boolean next() throws IOException
+        {
+            length = 0;
+            if (!cursor.next())
+                return false;
+            final int[] fileIds = cursor.ids();
+            for (int i = 0, n = cursor.length(); i < n; i++) {
+                final int idx = remap[fileIds[i]];
+                if (idx < 0)
+                    continue;
+                add(idx);
+            }
+            return true;
+        }
+    }
+
+    /** @return {@link Worker} to process the chunks of the queue */
+    abstract Worker createWorker(int randomSeed, WorkQueue queue);
 
     /** Worker thread that updates the neural network model */
     abstract class Worker extends CallableVoid
@@ -217,108 +1093,157 @@ abstract class Worker extends CallableVoid
         private static final int LEARNING_RATE_UPDATE_FREQUENCY = 10_000;
 
         long nextRandom;
-        final int iter;
-        final Iterable<List<String>> batch;
+        final WorkQueue queue;
+        /**
+         * Learning rate, affects how fast values in the layers get updated. Each
+         * worker computes its own from the shared count of words processed, so that
+         * the gradient steps never read a field written by other threads.
+         */
+        double alpha;
 
         /**
          * The number of words observed in the training data for this worker that exist
          * in the vocabulary. It includes words that are discarded from sampling.
          */
-        int wordCount;
-        /** Value of wordCount the last time alpha was updated */
-        int lastWordCount;
+        long wordCount;
+        /** Value of wordCount the last time it was added to actualWordCount */
+        long lastWordCount;
+        /**
+         * Copy of lastWordCount for the reporter thread of the
+         * {@link TrainingMonitor}, written only when the count is added
+         */
+        volatile long reportedWordCount;
 
         final double[] neu1 = new double[layer1_size];
         final double[] neu1e = new double[layer1_size];
+        /** Indexes of the current sentence, after down sampling */
+        private int[] filtered = new int[MAX_SENTENCE_LENGTH];
 
-        Worker(int randomSeed, int iter, Iterable<List<String>> batch)
+        Worker(int randomSeed, WorkQueue queue)
         {
             this.nextRandom = randomSeed;
-            this.iter = iter;
-            this.batch = batch;
+            this.queue = queue;
         }
 
         @Override
-        public void run() throws InterruptedException
+        public void run() throws InterruptedException, IOException
         {
-            for (List<String> sentence : batch) {
-                List<String> filteredSentence = new ArrayList<>(sentence.size());
-                for (String s : sentence) {
-                    if (!huffmanNodes.containsKey(s))
-                        continue;
+            while (true) {
+                chunkLock.readLock().lockInterruptibly();
+                try {
+                    final SentenceFeed feed = queue.next();
+                    if (feed == null)
+                        break;
+                    // from the progress of all workers, as a resumed training does
+                    alpha = learningRate(actualWordCount.sum());
+                    try {
+                        train(feed);
+                    } finally {
+                        feed.release();
+                    }
+                    // exact count for a checkpoint
+                    flushWordCount();
+                } finally {
+                    chunkLock.readLock().unlock();
+                }
+            }
+        }
 
+        /** Train on all the sentences of a chunk */
+        private void train(SentenceFeed feed) throws InterruptedException, IOException
+        {
+            while (feed.next()) {
+                final int[] sentence = feed.ids;
+                final int length = feed.length;
+                if (filtered.length < length)
+                    filtered = new int[sentence.length];
+                int filteredLength = 0;
+                final int[] keepThresholds = NeuralNetworkTrainer.this.keepThresholds;
+                for (int i = 0; i < length; i++) {
+                    final int idx = sentence[i];
                     wordCount++;
-                    if (config.downSampleRate > 0) {
-                        HuffmanNode huffmanNode = huffmanNodes.get(s);
-                        double random = (Math.sqrt(huffmanNode.count / (config.downSampleRate * numTrainedTokens)) + 1)
-                                * (config.downSampleRate * numTrainedTokens) / huffmanNode.count;
+                    if (keepThresholds != null) {
                         nextRandom = incrementRandom(nextRandom);
-                        if (random < (nextRandom & 0xFFFF) / (double) 65_536) {
+                        if ((nextRandom & 0xFFFF) > keepThresholds[idx]) {
                             continue;
                         }
                     }
 
-                    filteredSentence.add(s);
+                    filtered[filteredLength++] = idx;
                 }
 
                 // Increment word count one extra for the injected </s> token
                 // Turns out if you don't do this, the produced word vectors aren't as tasty
                 wordCount++;
 
-                Iterable<List<String>> partitioned = Iterables.partition(filteredSentence, MAX_SENTENCE_LENGTH);
-                for (List<String> chunked : partitioned) {
+                for (int from = 0; from < filteredLength; from += MAX_SENTENCE_LENGTH) {
                     if (Thread.currentThread().isInterrupted())
                         throw new InterruptedException("Interrupted while training word2vec model");
 
                     if (wordCount - lastWordCount > LEARNING_RATE_UPDATE_FREQUENCY) {
-                        updateAlpha(iter);
+                        updateAlpha();
                     }
-                    trainSentence(chunked);
+                    trainSentence(filtered, from, Math.min(filteredLength - from, MAX_SENTENCE_LENGTH));
                 }
             }
-
-            actualWordCount.addAndGet(wordCount - lastWordCount);
         }
 
         /**
-         * Degrades the learning rate (alpha) steadily towards 0
-         * 
-         * @param iter Only used for debugging
+         * Degrades the learning rate (alpha) along the schedule, from the count of
+         * words processed by all workers in all iterations
          */
-        private void updateAlpha(int iter)
+        private void updateAlpha()
         {
-            int currentActual = actualWordCount.addAndGet(wordCount - lastWordCount);
-            lastWordCount = wordCount;
+            flushWordCount();
+            final long currentActual = actualWordCount.sum();
 
-            // Degrade the learning rate linearly towards 0 but keep a minimum
-            alpha = config.initialLearningRate
-                    * Math.max(1 - currentActual / (double) (config.iterations * numTrainedTokens), 0.0001);
+            alpha = learningRate(currentActual);
+        }
 
-            listener.update(Stage.TRAIN_NEURAL_NETWORK,
-                    currentActual / (double) (config.iterations * numTrainedTokens + 1));
+        /** Add the words processed since the last time to the shared count */
+        private void flushWordCount()
+        {
+            actualWordCount.add(wordCount - lastWordCount);
+            lastWordCount = wordCount;
+            reportedWordCount = wordCount;
         }
 
-        void handleNegativeSampling(HuffmanNode huffmanNode)
+        /** @return Next word drawn from the unigram table, for negative sampling */
+        int negativeSample()
         {
+            nextRandom = incrementRandom(nextRandom);
+            int target = table[(int) (((nextRandom >> 16) % TABLE_SIZE) + TABLE_SIZE) % TABLE_SIZE];
+            if (target == 0)
+                target = (int) (((nextRandom % (vocabSize - 1)) + vocabSize - 1) % (vocabSize - 1)) + 1;
+            return target;
+        }
+
+        /**
+         * Negative sampling of a word predicted from a hidden layer, the error is
+         * added to neu1e
+         * 
+         * @param word   Word to predict
+         * @param hidden Hidden layer, mean of the context for CBOW, vector of the
+         *               context word for skip-gram
+         */
+        void handleNegativeSampling(int word, double[] hidden)
+        {
+            if (config.negativeSamples <= 0)
+                return;
             for (int d = 0; d <= config.negativeSamples; d++) {
                 int target;
                 final int label;
                 if (d == 0) {
-                    target = huffmanNode.idx;
+                    target = word;
                     label = 1;
                 } else {
-                    nextRandom = incrementRandom(nextRandom);
-                    target = table[(int) (((nextRandom >> 16) % TABLE_SIZE) + TABLE_SIZE) % TABLE_SIZE];
-                    if (target == 0)
-                        target = (int) (((nextRandom % (vocabSize - 1)) + vocabSize - 1) % (vocabSize - 1)) + 1;
-                    if (target == huffmanNode.idx)
+                    target = negativeSample();
+                    if (target == word)
                         continue;
                     label = 0;
                 }
                 int l2 = target;
-                double f = 0;
-                for (int c = 0; c < layer1_size; c++)
-                    f += neu1[c] * syn1neg[l2][c];
+                double f = KERNELS.dot(hidden, 0, syn1neg[l2], 0, layer1_size);
                 final double g;
                 if (f > MAX_EXP)
                     g = (label - 1) * alpha;
@@ -326,14 +1251,17 @@ else if (f < -MAX_EXP)
                     g = (label - 0) * alpha;
                 else
                     g = (label - EXP_TABLE[(int) ((f + MAX_EXP) * (EXP_TABLE_SIZE / MAX_EXP / 2))]) * alpha;
-                for (int c = 0; c < layer1_size; c++)
-                    neu1e[c] += g * syn1neg[l2][c];
-                for (int c = 0; c < layer1_size; c++)
-                    syn1neg[l2][c] += g * neu1[c];
+                KERNELS.axpy2(g, hidden, 0, syn1neg[l2], 0, neu1e, 0, layer1_size);
             }
         }
 
-        /** Update the model with the given raw sentence */
-        abstract void trainSentence(List<String> unfiltered);
+        /**
+         * Update the model with the given sentence of word ids
+         * 
+         * @param sentence Indexes, shared buffer
+         * @param offset   Start of the sentence in the buffer
+         * @param length   Count of words of the sentence
+         */
+        abstract void trainSentence(int[] sentence, int offset, int length);
     }
 }
@@ -1,10 +1,8 @@
 package com.github.oeuvres.jword2vec.neuralnetwork;
 
-import com.github.oeuvres.jword2vec.HuffmanCoding.HuffmanNode;
+import com.github.oeuvres.jword2vec.HuffmanCoding.Codes;
 import com.github.oeuvres.jword2vec.VecTrainerBuilder.TrainingProgressListener;
-import com.google.common.collect.Multiset;
-
-import java.util.Map;
+import com.github.oeuvres.jword2vec.Vocab;
 
 /** 
  * Supported types for the neural network
@@ -12,8 +10,8 @@
 public enum NeuralNetworkType {
 	/** Faster, slightly better accuracy for frequent words */
 	CBOW {
-		@Override NeuralNetworkTrainer createTrainer(NeuralNetworkConfig config, Multiset<String> counts, Map<String, HuffmanNode> huffmanNodes, TrainingProgressListener listener) {
-			return new CBOWModelTrainer(config, counts, huffmanNodes, listener);
+		@Override NeuralNetworkTrainer createTrainer(NeuralNetworkConfig config, Vocab vocab, Codes codes, TrainingProgressListener listener) {
+			return new CBOWModelTrainer(config, vocab, codes, listener);
 		}
 		
 		@Override public double getDefaultInitialLearningRate() {
@@ -22,8 +20,22 @@ public enum NeuralNetworkType {
 	},
 	/** Slower, better for infrequent words */
 	SKIP_GRAM {
-		@Override NeuralNetworkTrainer createTrainer(NeuralNetworkConfig config, Multiset<String> counts, Map<String, HuffmanNode> huffmanNodes, TrainingProgressListener listener) {
-			return new SkipGramModelTrainer(config, counts, huffmanNodes, listener);
+		@Override NeuralNetworkTrainer createTrainer(NeuralNetworkConfig config, Vocab vocab, Codes codes, TrainingProgressListener listener) {
+			return new SkipGramModelTrainer(config, vocab, codes, listener);
+		}
+		
+		@Override public double getDefaultInitialLearningRate() {
+			return 0.025;
+		}
+	},
+	/**
+	 * Skip gram with negative sampling only, the negative samples of a word are
+	 * shared by its context window, so that the updates are small matrix products.
+	 * Faster than {@link #SKIP_GRAM} by core, with a close accuracy.
+	 */
+	SKIP_GRAM_BATCHED {
+		@Override NeuralNetworkTrainer createTrainer(NeuralNetworkConfig config, Vocab vocab, Codes codes, TrainingProgressListener listener) {
+			return new SkipGramBatchedModelTrainer(config, vocab, codes, listener);
 		}
 		
 		@Override public double getDefaultInitialLearningRate() {
@@ -36,5 +48,5 @@ public enum NeuralNetworkType {
 	public abstract double getDefaultInitialLearningRate();
 	
 	/** @return New {@link NeuralNetworkTrainer} */
-	abstract NeuralNetworkTrainer createTrainer(NeuralNetworkConfig config, Multiset<String> counts, Map<String, HuffmanNode> huffmanNodes, TrainingProgressListener listener);
+	abstract NeuralNetworkTrainer createTrainer(NeuralNetworkConfig config, Vocab vocab, Codes codes, TrainingProgressListener listener);
 }
\ No newline at end of file
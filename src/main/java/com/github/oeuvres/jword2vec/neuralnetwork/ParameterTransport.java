@@ -0,0 +1,33 @@
+package com.github.oeuvres.jword2vec.neuralnetwork;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Exchange of the weights between the processes of a distributed training, see
+ * {@link NeuralNetworkTrainer#distribute(ParameterTransport, long, java.util.concurrent.TimeUnit)}.
+ * Each process trains on its own shard of the corpus, and the weights of all the
+ * processes are averaged at regular intervals.
+ * <p>
+ * {@link #allReduce(double[], int)} is collective: all the processes call it the
+ * same number of times, with the same lengths, and each call returns when all
+ * of them have made it. The sum must be computed in the same order in all the
+ * processes, so that they end with exactly the same weights.
+ */
+public interface ParameterTransport extends Closeable
+{
+    /** @return Index of this process, from 0 to {@link #size()} - 1 */
+    int rank();
+
+    /** @return Count of processes */
+    int size();
+
+    /**
+     * Replace the first values of an array with their sums over all the
+     * processes
+     * 
+     * @param data   Values of this process, then the sums
+     * @param length Count of values
+     */
+    void allReduce(double[] data, int length) throws IOException, InterruptedException;
+}
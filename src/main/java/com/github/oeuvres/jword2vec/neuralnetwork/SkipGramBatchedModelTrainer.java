@@ -0,0 +1,126 @@
+package com.github.oeuvres.jword2vec.neuralnetwork;
+
+import java.util.Arrays;
+
+import com.github.oeuvres.jword2vec.HuffmanCoding.Codes;
+import com.github.oeuvres.jword2vec.VecTrainerBuilder.TrainingProgressListener;
+import com.github.oeuvres.jword2vec.Vocab;
+import com.google.common.base.Preconditions;
+
+/**
+ * Trainer for skip gram with negative sampling, where the negative samples of a
+ * word are shared by all the words of its context window, as in pWord2Vec (Ji
+ * et al., "Parallelizing Word2Vec in Shared and Distributed Memory").
+ * <p>
+ * For each word, the vectors of its context words and the output vectors of the
+ * word and of its negative samples are copied in two small dense blocks. The
+ * dot products of all pairs, then the updates of both blocks, are two small
+ * matrix products, which reuse each loaded vector for all the pairs, instead of
+ * one dot product by pair with vectors loaded again each time. The blocks are
+ * added back to the network once by word.
+ */
+class SkipGramBatchedModelTrainer extends NeuralNetworkTrainer {
+
+	SkipGramBatchedModelTrainer(NeuralNetworkConfig config, Vocab vocab, Codes codes, TrainingProgressListener listener) {
+		super(config, vocab, codes, listener);
+		Preconditions.checkArgument(config.negativeSamples > 0, "Batched skip gram needs negative samples");
+		Preconditions.checkArgument(!config.useHierarchicalSoftmax, "Batched skip gram has no hierarchical softmax");
+	}
+
+	/** {@link Worker} for {@link SkipGramBatchedModelTrainer} */
+	private class SkipGramBatchedWorker extends Worker {
+		/** Ids of the context words, the random window shift may be negative as in {@link SkipGramModelTrainer} */
+		private final int[] inputs = new int[window * 4];
+		/** Ids of the word, then of its negative samples */
+		private final int[] outputs = new int[config.negativeSamples + 1];
+		/** Vectors of the context words, one row by input */
+		private final double[] in = new double[inputs.length * layer1_size];
+		/** Output vectors, one row by output */
+		private final double[] out = new double[outputs.length * layer1_size];
+		/** Updates of in */
+		private final double[] inDelta = new double[in.length];
+		/** Updates of out */
+		private final double[] outDelta = new double[out.length];
+		/** Gradients multiplied by the learning rate, by input and output */
+		private final double[] gradients = new double[inputs.length * outputs.length];
+
+		private SkipGramBatchedWorker(int randomSeed, WorkQueue queue) {
+			super(randomSeed, queue);
+		}
+
+		@Override void trainSentence(int[] sentence, int offset, int sentenceLength) {
+			final int layerSize = layer1_size;
+			for (int sentencePosition = 0; sentencePosition < sentenceLength; sentencePosition++) {
+				final int word = sentence[offset + sentencePosition];
+
+				nextRandom = incrementRandom(nextRandom);
+				final int b = (int)(((nextRandom % window) + nextRandom) % window);
+				int numInputs = 0;
+				for (int a = b; a < window * 2 + 1 - b; a++) {
+					if (a == window)
+						continue;
+					final int c = sentencePosition - window + a;
+					if (c < 0 || c >= sentenceLength)
+						continue;
+					inputs[numInputs++] = sentence[offset + c];
+				}
+				if (numInputs == 0)
+					continue;
+
+				// the word, and the negative samples shared by the window
+				int numOutputs = 0;
+				outputs[numOutputs++] = word;
+				for (int d = 0; d < config.negativeSamples; d++) {
+					final int target = negativeSample();
+					if (target == word)
+						continue;
+					outputs[numOutputs++] = target;
+				}
+
+				for (int i = 0; i < numInputs; i++)
+					System.arraycopy(syn0[inputs[i]], 0, in, i * layerSize, layerSize);
+				for (int j = 0; j < numOutputs; j++)
+					System.arraycopy(syn1neg[outputs[j]], 0, out, j * layerSize, layerSize);
+
+				// scores of all pairs: in × out^T
+				for (int i = 0; i < numInputs; i++) {
+					final int inRow = i * layerSize;
+					for (int j = 0; j < numOutputs; j++) {
+						final double f = KERNELS.dot(in, inRow, out, j * layerSize, layerSize);
+						final int label = (j == 0) ? 1 : 0;
+						final double g;
+						if (f > MAX_EXP)
+							g = (label - 1) * alpha;
+						else if (f < -MAX_EXP)
+							g = (label - 0) * alpha;
+						else
+							g = (label - EXP_TABLE[(int) ((f + MAX_EXP) * (EXP_TABLE_SIZE / MAX_EXP / 2))]) * alpha;
+						gradients[i * numOutputs + j] = g;
+					}
+				}
+
+				// updates of both blocks: gradients × out, and gradients^T × in
+				Arrays.fill(inDelta, 0, numInputs * layerSize, 0);
+				Arrays.fill(outDelta, 0, numOutputs * layerSize, 0);
+				for (int i = 0; i < numInputs; i++) {
+					final int inRow = i * layerSize;
+					for (int j = 0; j < numOutputs; j++) {
+						final int outRow = j * layerSize;
+						final double g = gradients[i * numOutputs + j];
+						KERNELS.axpy(g, out, outRow, inDelta, inRow, layerSize);
+						KERNELS.axpy(g, in, inRow, outDelta, outRow, layerSize);
+					}
+				}
+
+				for (int i = 0; i < numInputs; i++)
+					KERNELS.axpy(1, inDelta, i * layerSize, syn0[inputs[i]], 0, layerSize);
+				for (int j = 0; j < numOutputs; j++)
+					KERNELS.axpy(1, outDelta, j * layerSize, syn1neg[outputs[j]], 0, layerSize);
+			}
+		}
+	}
+
+	@Override Worker createWorker(int randomSeed, WorkQueue queue) {
+		return new SkipGramBatchedWorker(randomSeed, queue);
+	}
+}
@@ -1,38 +1,30 @@
 package com.github.oeuvres.jword2vec.neuralnetwork;
 
-import com.github.oeuvres.jword2vec.HuffmanCoding.HuffmanNode;
-import com.github.oeuvres.jword2vec.VecTrainerBuilder.TrainingProgressListener;
-import com.google.common.collect.Multiset;
+import java.util.Arrays;
 
-import java.util.List;
-import java.util.Map;
+import com.github.oeuvres.jword2vec.HuffmanCoding.Codes;
+import com.github.oeuvres.jword2vec.VecTrainerBuilder.TrainingProgressListener;
+import com.github.oeuvres.jword2vec.Vocab;
 
 /**
  * Trainer for neural network using skip gram
  */
 class SkipGramModelTrainer extends NeuralNetworkTrainer {
 	
-	SkipGramModelTrainer(NeuralNetworkConfig config, Multiset<String> counts, Map<String, HuffmanNode> huffmanNodes, TrainingProgressListener listener) {
-		super(config, counts, huffmanNodes, listener);
+	SkipGramModelTrainer(NeuralNetworkConfig config, Vocab vocab, Codes codes, TrainingProgressListener listener) {
+		super(config, vocab, codes, listener);
 	}
 	
 	/** {@link Worker} for {@link SkipGramModelTrainer} */
 	private class SkipGramWorker extends Worker {
-		private SkipGramWorker(int randomSeed, int iter, Iterable<List<String>> batch) {
-			super(randomSeed, iter, batch);
+		private SkipGramWorker(int randomSeed, WorkQueue queue) {
+			super(randomSeed, queue);
 		}
 		
-		@Override void trainSentence(List<String> sentence) {
-			int sentenceLength = sentence.size();
-			
+		@Override void trainSentence(int[] sentence, int offset, int sentenceLength) {
 			for (int sentencePosition = 0; sentencePosition < sentenceLength; sentencePosition++) {
-				String word = sentence.get(sentencePosition);
-				HuffmanNode huffmanNode = huffmanNodes.get(word);
+				int word = sentence[offset + sentencePosition];
 
-				for (int c = 0; c < layer1_size; c++)
-					neu1[c] = 0;
-				for (int c = 0; c < layer1_size; c++)
-					neu1e[c] = 0;
 				nextRandom = incrementRandom(nextRandom);
 
 				int b = (int)(((nextRandom % window) + nextRandom) % window);
@@ -44,47 +36,38 @@ private SkipGramWorker(int randomSeed, int iter, Iterable<List<String>> batch) {
 					
 					if (c < 0 || c >= sentenceLength)
 						continue;
-					for (int d = 0; d < layer1_size; d++)
-						neu1e[d] = 0;
+					Arrays.fill(neu1e, 0);
 					
-					int l1 = huffmanNodes.get(sentence.get(c)).idx;
+					int l1 = sentence[offset + c];
 					
 					if (config.useHierarchicalSoftmax) {
-						for (int d = 0; d < huffmanNode.code.length; d++) {
-							double f = 0;
-							int l2 = huffmanNode.point[d];
+						for (int d = codeOffsets[word]; d < codeOffsets[word + 1]; d++) {
+							int l2 = point[d];
 							// Propagate hidden -> output
-							for (int e = 0; e < layer1_size; e++)
-								f += syn0[l1][e] * syn1[l2][e];
+							double f = KERNELS.dot(syn0[l1], 0, syn1[l2], 0, layer1_size);
 							
 							if (f <= -MAX_EXP || f >= MAX_EXP)
 								continue;
 							else
 								f = EXP_TABLE[(int)((f + MAX_EXP) * (EXP_TABLE_SIZE / MAX_EXP / 2))];
 							// 'g' is the gradient multiplied by the learning rate
-							double g = (1 - huffmanNode.code[d] - f) * alpha;
+							double g = (1 - code[d] - f) * alpha;
 							
-							// Propagate errors output -> hidden
-							for (int e = 0; e < layer1_size; e++)
-								neu1e[e] += g * syn1[l2][e];
-							// Learn weights hidden -> output
-							for (int e = 0; e < layer1_size; e++)
-								syn1[l2][e] += g * syn0[l1][e];
+							// Propagate errors output -> hidden, and learn weights hidden -> output
+							KERNELS.axpy2(g, syn0[l1], 0, syn1[l2], 0, neu1e, 0, layer1_size);
 						}
 					}
 					
-					handleNegativeSampling(huffmanNode);
+					handleNegativeSampling(word, syn0[l1]);
 					
 					// Learn weights input -> hidden
-					for (int d = 0; d < layer1_size; d++) {
-						syn0[l1][d] += neu1e[d];
-					}
+					KERNELS.axpy(1, neu1e, 0, syn0[l1], 0, layer1_size);
 				}
 			}
 		}
 	}
 
-	@Override Worker createWorker(int randomSeed, int iter, Iterable<List<String>> batch) {
-		return new SkipGramWorker(randomSeed, iter, batch);
+	@Override Worker createWorker(int randomSeed, WorkQueue queue) {
+		return new SkipGramWorker(randomSeed, queue);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,184 @@
+package com.github.oeuvres.jword2vec.neuralnetwork;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * {@link ParameterTransport} through TCP sockets, for processes on one host or
+ * on several ones. The process of rank 0 is the hub: it listens on the given
+ * address, receives the values of the others, sums them and sends the sums back.
+ */
+public final class SocketTransport implements ParameterTransport
+{
+    /** Delay between two connection attempts to a hub not started yet */
+    private static final long RETRY_MILLIS = 100;
+
+    private final int rank;
+    private final int size;
+    /** For the hub, the others by rank, from 1; for the others, the hub only */
+    private final SocketChannel[] channels;
+    private final ServerSocketChannel server;
+    /** Values sent or received */
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(0);
+    /** Values of another process, for the hub */
+    private double[] received = new double[0];
+
+    private SocketTransport(int rank, int size, ServerSocketChannel server, SocketChannel[] channels)
+    {
+        this.rank = rank;
+        this.size = size;
+        this.server = server;
+        this.channels = channels;
+    }
+
+    /**
+     * Connect all the processes, returns when they all are
+     * 
+     * @param hub     Address of the process of rank 0, where it listens
+     * @param rank    Index of this process
+     * @param size    Count of processes
+     * @param timeout Delay to wait for the others
+     */
+    public static SocketTransport connect(InetSocketAddress hub, int rank, int size, long timeout, TimeUnit unit)
+            throws IOException, InterruptedException
+    {
+        Preconditions.checkArgument(size > 0, "Value must be positive");
+        Preconditions.checkArgument(rank >= 0 && rank < size, "Rank %s not in [0, %s[", rank, size);
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (rank == 0)
+            return listen(hub, size, deadline);
+        while (true) {
+            final SocketChannel channel = SocketChannel.open();
+            try {
+                channel.connect(hub);
+                channel.socket().setTcpNoDelay(true);
+                final ByteBuffer hello = ByteBuffer.allocate(8).putInt(rank).putInt(size).flip();
+                while (hello.hasRemaining())
+                    channel.write(hello);
+                return new SocketTransport(rank, size, null, new SocketChannel[] { channel });
+            } catch (IOException e) {
+                channel.close();
+                if (System.nanoTime() > deadline)
+                    throw new SocketTimeoutException("No hub at " + hub);
+                Thread.sleep(RETRY_MILLIS);
+            }
+        }
+    }
+
+    private static SocketTransport listen(InetSocketAddress address, int size, long deadline) throws IOException
+    {
+        final ServerSocketChannel server = ServerSocketChannel.open();
+        final SocketChannel[] channels = new SocketChannel[size];
+        try {
+            server.bind(address);
+            for (int i = 1; i < size; i++) {
+                final int millis = (int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+                server.socket().setSoTimeout(millis);
+                // the socket of a channel in blocking mode honours the timeout
+                final SocketChannel channel = server.socket().accept().getChannel();
+                channel.socket().setTcpNoDelay(true);
+                final ByteBuffer hello = ByteBuffer.allocate(8);
+                read(channel, hello);
+                hello.flip();
+                final int rank = hello.getInt();
+                final int peerSize = hello.getInt();
+                if (peerSize != size || rank <= 0 || rank >= size || channels[rank] != null) {
+                    channel.close();
+                    throw new IOException("Unexpected process, rank " + rank + " of " + peerSize);
+                }
+                channels[rank] = channel;
+            }
+        } catch (IOException e) {
+            for (SocketChannel channel : channels)
+                if (channel != null)
+                    channel.close();
+            server.close();
+            throw e;
+        }
+        return new SocketTransport(0, size, server, channels);
+    }
+
+    @Override
+    public int rank()
+    {
+        return rank;
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public void allReduce(double[] data, int length) throws IOException
+    {
+        if (size == 1)
+            return;
+        if (rank != 0) {
+            send(channels[0], data, length);
+            receive(channels[0], data, length);
+            return;
+        }
+        if (received.length < length)
+            received = new double[length];
+        // by rank, so that the sum is the same in all processes
+        for (int r = 1; r < size; r++) {
+            receive(channels[r], received, length);
+            for (int i = 0; i < length; i++)
+                data[i] += received[i];
+        }
+        for (int r = 1; r < size; r++)
+            send(channels[r], data, length);
+    }
+
+    private ByteBuffer buffer(int length)
+    {
+        if (buffer.capacity() < length * Double.BYTES)
+            buffer = ByteBuffer.allocateDirect(length * Double.BYTES).order(ByteOrder.BIG_ENDIAN);
+        buffer.clear().limit(length * Double.BYTES);
+        return buffer;
+    }
+
+    private void send(SocketChannel channel, double[] data, int length) throws IOException
+    {
+        final ByteBuffer buffer = buffer(length);
+        buffer.asDoubleBuffer().put(data, 0, length);
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    private void receive(SocketChannel channel, double[] data, int length) throws IOException
+    {
+        final ByteBuffer buffer = buffer(length);
+        read(channel, buffer);
+        buffer.flip();
+        buffer.asDoubleBuffer().get(data, 0, length);
+    }
+
+    private static void read(SocketChannel channel, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+            if (channel.read(buffer) < 0)
+                throw new EOFException("Connection closed by another process");
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        for (SocketChannel channel : channels)
+            if (channel != null)
+                channel.close();
+        if (server != null)
+            server.close();
+    }
+}
@@ -0,0 +1,38 @@
+package com.github.oeuvres.jword2vec.neuralnetwork;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * {@link TrainingMetrics} in a flight recording, committed at each sample when
+ * the event is enabled, for example with
+ * <code>-XX:StartFlightRecording</code> and the default settings
+ */
+@Name("com.github.oeuvres.jword2vec.Training")
+@Label("Word2vec Training")
+@Category("Word2vec")
+@Description("Sample of the state of a training of the neural network")
+final class TrainingEvent extends jdk.jfr.Event
+{
+    @Label("Progress")
+    double progress;
+
+    @Label("Words")
+    long words;
+
+    @Label("Words by Second")
+    double wordsPerSecond;
+
+    @Label("Learning Rate")
+    double alpha;
+
+    @Label("Backlog")
+    int backlog;
+
+    @Label("Weights")
+    @DataAmount
+    long weightsBytes;
+}
@@ -0,0 +1,26 @@
+package com.github.oeuvres.jword2vec.neuralnetwork;
+
+/**
+ * Last {@link TrainingMetrics} of a training, registered in the platform MBean
+ * server while it runs, see {@link TrainingMonitor}
+ */
+public interface TrainingMXBean
+{
+    double getProgress();
+
+    long getWords();
+
+    double getWordsPerSecond();
+
+    double getRecentWordsPerSecond();
+
+    double[] getThreadWordsPerSecond();
+
+    double getAlpha();
+
+    int getBacklog();
+
+    long getWeightsBytes();
+
+    long getHeapUsedBytes();
+}
@@ -0,0 +1,77 @@
+package com.github.oeuvres.jword2vec.neuralnetwork;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import com.github.oeuvres.jword2vec.VecTrainerBuilder.TrainingProgressListener.Stage;
+
+/**
+ * State of a training of the neural network, sampled at regular intervals by
+ * the reporter thread of a {@link TrainingMonitor}, off the path of the
+ * workers
+ */
+public final class TrainingMetrics
+{
+    /** Time since the start of the training of the neural network */
+    public final long elapsedMillis;
+    /** Part of the training done, from 0 to 1 */
+    public final double progress;
+    /** Count of words processed by this process, in all iterations */
+    public final long words;
+    /** Words by second since the start of the training */
+    public final double wordsPerSecond;
+    /** Words by second since the last sample */
+    public final double recentWordsPerSecond;
+    /** Words by second since the last sample, of each worker thread */
+    private final double[] threadWordsPerSecond;
+    /** Learning rate of the next chunks */
+    public final double alpha;
+    /** Chunks of sentences ready for the workers */
+    public final int backlog;
+    /** Time spent in each stage, until now for the current one */
+    public final Map<Stage, Long> stageMillis;
+    /** Bytes of the input weights, the word vectors */
+    public final long syn0Bytes;
+    /** Bytes of the output weights of hierarchical softmax, 0 if not used */
+    public final long syn1Bytes;
+    /** Bytes of the output weights of negative sampling, 0 if not used */
+    public final long syn1negBytes;
+    /** Bytes of heap in use */
+    public final long heapUsedBytes;
+
+    TrainingMetrics(long elapsedMillis, double progress, long words, double wordsPerSecond,
+            double recentWordsPerSecond, double[] threadWordsPerSecond, double alpha, int backlog,
+            Map<Stage, Long> stageMillis, long syn0Bytes, long syn1Bytes, long syn1negBytes, long heapUsedBytes)
+    {
+        this.elapsedMillis = elapsedMillis;
+        this.progress = progress;
+        this.words = words;
+        this.wordsPerSecond = wordsPerSecond;
+        this.recentWordsPerSecond = recentWordsPerSecond;
+        this.threadWordsPerSecond = threadWordsPerSecond;
+        this.alpha = alpha;
+        this.backlog = backlog;
+        this.stageMillis = Collections.unmodifiableMap(stageMillis);
+        this.syn0Bytes = syn0Bytes;
+        this.syn1Bytes = syn1Bytes;
+        this.syn1negBytes = syn1negBytes;
+        this.heapUsedBytes = heapUsedBytes;
+    }
+
+    /** @return Words by second since the last sample, of each worker thread */
+    public double[] threadWordsPerSecond()
+    {
+        return threadWordsPerSecond.clone();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("progress %.2f%%, %d words, %.0f words/s (now %.0f, by thread %s), alpha %.6f, "
+                + "backlog %d, stages %s ms, weights %d MB, heap %d MB", progress * 100, words, wordsPerSecond,
+                recentWordsPerSecond, Arrays.toString(Arrays.stream(threadWordsPerSecond).mapToLong(Math::round)
+                        .toArray()), alpha, backlog, stageMillis,
+                (syn0Bytes + syn1Bytes + syn1negBytes) >> 20, heapUsedBytes >> 20);
+    }
+}
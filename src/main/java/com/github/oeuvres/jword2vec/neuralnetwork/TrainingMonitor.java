@@ -0,0 +1,270 @@
+package com.github.oeuvres.jword2vec.neuralnetwork;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.github.oeuvres.jword2vec.VecTrainerBuilder.TrainingMetricsListener;
+import com.github.oeuvres.jword2vec.VecTrainerBuilder.TrainingProgressListener;
+import com.github.oeuvres.jword2vec.neuralnetwork.NeuralNetworkTrainer.WorkQueue;
+import com.github.oeuvres.jword2vec.neuralnetwork.NeuralNetworkTrainer.Worker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Watch a training. It records the time of each stage from the progress
+ * updates it forwards to a listener. While the neural network is trained, a
+ * reporter thread samples the counters of the workers at regular intervals,
+ * and reports the progress and the {@link TrainingMetrics}, so that nothing is
+ * called from the workers. The metrics may also be read from JMX, and are
+ * recorded as {@link TrainingEvent}s when a flight recording enables them.
+ */
+public class TrainingMonitor implements TrainingProgressListener
+{
+    /** Delay between two reports, when no other is asked */
+    public static final long DEFAULT_INTERVAL_MILLIS = 1_000;
+    /** Count of MBeans registered, to name each training */
+    private static final AtomicInteger TRAININGS = new AtomicInteger();
+
+    private final TrainingProgressListener listener;
+    /** Null if not asked */
+    private final TrainingMetricsListener metricsListener;
+    private final long intervalMillis;
+    private final boolean jmx;
+    /** Time of the finished stages */
+    private final Map<Stage, Long> stageNanos = new EnumMap<>(Stage.class);
+    private Stage stage;
+    private long stageStart;
+
+    /** Only forward the progress, every second */
+    public TrainingMonitor(TrainingProgressListener listener)
+    {
+        this(listener, null, DEFAULT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS, false);
+    }
+
+    /**
+     * @param listener        Progress of each stage
+     * @param metricsListener Metrics of the training, or null
+     * @param interval        Delay between two reports
+     * @param jmx             true to register the metrics in the platform MBean
+     *                        server
+     */
+    public TrainingMonitor(TrainingProgressListener listener, TrainingMetricsListener metricsListener,
+            long interval, TimeUnit unit, boolean jmx)
+    {
+        this.listener = listener;
+        this.metricsListener = metricsListener;
+        this.intervalMillis = unit.toMillis(interval);
+        this.jmx = jmx;
+    }
+
+    @Override
+    public void update(Stage stage, double progress)
+    {
+        synchronized (stageNanos) {
+            if (stage != this.stage) {
+                final long now = System.nanoTime();
+                if (this.stage != null)
+                    stageNanos.merge(this.stage, now - stageStart, Long::sum);
+                this.stage = stage;
+                this.stageStart = now;
+            }
+        }
+        listener.update(stage, progress);
+    }
+
+    /** @return Time of each stage, until now for the current one */
+    private Map<Stage, Long> stageMillis()
+    {
+        final Map<Stage, Long> millis = new EnumMap<>(Stage.class);
+        synchronized (stageNanos) {
+            for (Map.Entry<Stage, Long> entry : stageNanos.entrySet())
+                millis.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue()));
+            if (stage != null)
+                millis.merge(stage, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stageStart), Long::sum);
+        }
+        return millis;
+    }
+
+    /**
+     * Start sampling the training of a neural network
+     * 
+     * @return Sampling to stop at the end of the training
+     */
+    Sampling start(NeuralNetworkTrainer trainer, WorkQueue queue, List<? extends Worker> workers)
+    {
+        return new Sampling(trainer, queue, workers);
+    }
+
+    /** Reporter thread of a training, and its last sample */
+    final class Sampling implements TrainingMXBean
+    {
+        private final NeuralNetworkTrainer trainer;
+        private final WorkQueue queue;
+        private final List<? extends Worker> workers;
+        private final ScheduledExecutorService reporter;
+        private final long start = System.nanoTime();
+        private final long startWords;
+        private final ObjectName name;
+        /** Counts of the last sample */
+        private long lastTime;
+        private long lastWords;
+        private final long[] lastThreadWords;
+        private volatile TrainingMetrics last;
+
+        private Sampling(NeuralNetworkTrainer trainer, WorkQueue queue, List<? extends Worker> workers)
+        {
+            this.trainer = trainer;
+            this.queue = queue;
+            this.workers = workers;
+            this.startWords = trainer.actualWordCount.sum();
+            this.lastTime = start;
+            this.lastWords = startWords;
+            this.lastThreadWords = new long[workers.size()];
+            this.last = sample();
+            this.name = jmx ? register() : null;
+            this.reporter = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("word2vec-metrics").setDaemon(true).build());
+            reporter.scheduleAtFixedRate(this::report, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        private ObjectName register()
+        {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                final ObjectName name = new ObjectName(
+                        "com.github.oeuvres.jword2vec:type=Training,name=training-" + TRAININGS.incrementAndGet());
+                server.registerMBean(this, name);
+                return name;
+            } catch (JMException e) {
+                throw new IllegalStateException("Error registering training metrics", e);
+            }
+        }
+
+        /** Called by the reporter thread only, except the first and the last time */
+        private synchronized TrainingMetrics sample()
+        {
+            final long now = System.nanoTime();
+            final long words = trainer.actualWordCount.sum();
+            final double seconds = Math.max(now - lastTime, 1) / 1e9;
+            final double[] threadWordsPerSecond = new double[workers.size()];
+            for (int i = 0; i < threadWordsPerSecond.length; i++) {
+                final long threadWords = workers.get(i).reportedWordCount;
+                threadWordsPerSecond[i] = (threadWords - lastThreadWords[i]) / seconds;
+                lastThreadWords[i] = threadWords;
+            }
+            final TrainingMetrics metrics = new TrainingMetrics(TimeUnit.NANOSECONDS.toMillis(now - start),
+                    trainer.progress(words), words, (words - startWords) / (Math.max(now - start, 1) / 1e9),
+                    (words - lastWords) / seconds, threadWordsPerSecond, trainer.learningRate(words),
+                    queue.backlog(), stageMillis(), bytes(trainer.syn0), bytes(trainer.syn1), bytes(trainer.syn1neg),
+                    Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory());
+            lastTime = now;
+            lastWords = words;
+            return metrics;
+        }
+
+        private long bytes(double[][] weights)
+        {
+            return weights.length == 0 ? 0 : (long) weights.length * weights[0].length * Double.BYTES;
+        }
+
+        private void report()
+        {
+            final TrainingMetrics metrics = sample();
+            last = metrics;
+            listener.update(Stage.TRAIN_NEURAL_NETWORK, metrics.progress);
+            if (metricsListener != null)
+                metricsListener.report(metrics);
+            final TrainingEvent event = new TrainingEvent();
+            if (event.shouldCommit()) {
+                event.progress = metrics.progress;
+                event.words = metrics.words;
+                event.wordsPerSecond = metrics.recentWordsPerSecond;
+                event.alpha = metrics.alpha;
+                event.backlog = metrics.backlog;
+                event.weightsBytes = getWeightsBytes();
+                event.commit();
+            }
+        }
+
+        /** Stop the reporter thread, and report the end of the training */
+        void stop() throws InterruptedException
+        {
+            reporter.shutdownNow();
+            reporter.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            try {
+                report();
+            } finally {
+                if (name != null) {
+                    try {
+                        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+                    } catch (JMException e) {
+                        // already gone
+                    }
+                }
+            }
+        }
+
+        @Override
+        public double getProgress()
+        {
+            return last.progress;
+        }
+
+        @Override
+        public long getWords()
+        {
+            return last.words;
+        }
+
+        @Override
+        public double getWordsPerSecond()
+        {
+            return last.wordsPerSecond;
+        }
+
+        @Override
+        public double getRecentWordsPerSecond()
+        {
+            return last.recentWordsPerSecond;
+        }
+
+        @Override
+        public double[] getThreadWordsPerSecond()
+        {
+            return last.threadWordsPerSecond();
+        }
+
+        @Override
+        public double getAlpha()
+        {
+            return last.alpha;
+        }
+
+        @Override
+        public int getBacklog()
+        {
+            return last.backlog;
+        }
+
+        @Override
+        public long getWeightsBytes()
+        {
+            return last.syn0Bytes + last.syn1Bytes + last.syn1negBytes;
+        }
+
+        @Override
+        public long getHeapUsedBytes()
+        {
+            return last.heapUsedBytes;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.oeuvres.jword2vec.util;
+
+/**
+ * Loops on vectors of doubles, from the inner loops of the training. The
+ * default implementation is plain Java, the build profile <code>vector</code>
+ * adds an implementation with the incubating Vector API of the JDK, used when
+ * the module <code>jdk.incubator.vector</code> is available at runtime
+ * (<code>--add-modules jdk.incubator.vector</code>). The system property
+ * <code>jword2vec.kernels=scalar</code> forces the plain Java one.
+ */
+public abstract class Kernels
+{
+    /** Name of the implementation with the Vector API, only compiled by the profile <code>vector</code> */
+    private static final String VECTOR_CLASS = "com.github.oeuvres.jword2vec.util.VectorKernels";
+    /** Best implementation available */
+    private static final Kernels INSTANCE = load();
+
+    /** @return Best implementation available */
+    public static Kernels get()
+    {
+        return INSTANCE;
+    }
+
+    /** @return Plain Java implementation */
+    public static Kernels scalar()
+    {
+        return ScalarKernels.INSTANCE;
+    }
+
+    /** @return Implementation with the Vector API, or null if it is not available */
+    public static Kernels vector()
+    {
+        try {
+            return (Kernels) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // not compiled, or module not added at runtime
+            return null;
+        }
+    }
+
+    private static Kernels load()
+    {
+        if ("scalar".equals(System.getProperty("jword2vec.kernels")))
+            return scalar();
+        final Kernels vector = vector();
+        return (vector == null) ? scalar() : vector;
+    }
+
+    /** @return Name of the implementation */
+    public abstract String name();
+
+    /** @return Dot product of x and y */
+    public abstract double dot(double[] x, int xOffset, double[] y, int yOffset, int length);
+
+    /** y += a * x */
+    public abstract void axpy(double a, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+    /**
+     * Both updates after the dot product of a hidden layer and an output vector,
+     * in one pass on the output vector: error += a * output, then output += a *
+     * hidden
+     */
+    public abstract void axpy2(double a, double[] hidden, int hiddenOffset, double[] output, int outputOffset,
+            double[] error, int errorOffset, int length);
+
+    /** x *= a */
+    public abstract void scale(double a, double[] x, int xOffset, int length);
+
+    /** Plain Java loops, vectorized or not by the JIT */
+    private static final class ScalarKernels extends Kernels
+    {
+        private static final ScalarKernels INSTANCE = new ScalarKernels();
+
+        @Override
+        public String name()
+        {
+            return "scalar";
+        }
+
+        @Override
+        public double dot(double[] x, int xOffset, double[] y, int yOffset, int length)
+        {
+            double f = 0;
+            for (int i = 0; i < length; i++)
+                f += x[xOffset + i] * y[yOffset + i];
+            return f;
+        }
+
+        @Override
+        public void axpy(double a, double[] x, int xOffset, double[] y, int yOffset, int length)
+        {
+            for (int i = 0; i < length; i++)
+                y[yOffset + i] += a * x[xOffset + i];
+        }
+
+        @Override
+        public void axpy2(double a, double[] hidden, int hiddenOffset, double[] output, int outputOffset,
+                double[] error, int errorOffset, int length)
+        {
+            for (int i = 0; i < length; i++) {
+                final double o = output[outputOffset + i];
+                error[errorOffset + i] += a * o;
+                output[outputOffset + i] = o + a * hidden[hiddenOffset + i];
+            }
+        }
+
+        @Override
+        public void scale(double a, double[] x, int xOffset, int length)
+        {
+            for (int i = 0; i < length; i++)
+                x[xOffset + i] *= a;
+        }
+    }
+}
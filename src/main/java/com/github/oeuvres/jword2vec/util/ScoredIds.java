@@ -0,0 +1,82 @@
+package com.github.oeuvres.jword2vec.util;
+
+import java.util.Arrays;
+
+import com.github.oeuvres.alix.util.Edge;
+
+/**
+ * Growable list of ids with their scores, in two primitive arrays, for results
+ * of unknown size without an object by result
+ */
+public class ScoredIds
+{
+    private int[] ids;
+    private double[] scores;
+    private int size;
+
+    public ScoredIds()
+    {
+        this(16);
+    }
+
+    public ScoredIds(int capacity)
+    {
+        ids = new int[Math.max(capacity, 1)];
+        scores = new double[ids.length];
+    }
+
+    /** Append an id with its score */
+    public void add(int id, double score)
+    {
+        if (size == ids.length) {
+            final int capacity = ids.length + (ids.length >> 1) + 1;
+            ids = Arrays.copyOf(ids, capacity);
+            scores = Arrays.copyOf(scores, capacity);
+        }
+        ids[size] = id;
+        scores[size] = score;
+        size++;
+    }
+
+    /** Append all the ids of another list */
+    public void addAll(ScoredIds other)
+    {
+        if (size + other.size > ids.length) {
+            final int capacity = Math.max(size + other.size, ids.length + (ids.length >> 1));
+            ids = Arrays.copyOf(ids, capacity);
+            scores = Arrays.copyOf(scores, capacity);
+        }
+        System.arraycopy(other.ids, 0, ids, size, other.size);
+        System.arraycopy(other.scores, 0, scores, size, other.size);
+        size += other.size;
+    }
+
+    /** @return Count of ids */
+    public int size()
+    {
+        return size;
+    }
+
+    public int id(int i)
+    {
+        return ids[i];
+    }
+
+    public double score(int i)
+    {
+        return scores[i];
+    }
+
+    /**
+     * @param labels Labels of the ids
+     * @return Edges to the ids, from the highest score
+     */
+    public Edge[] toEdges(String[] labels)
+    {
+        final Edge[] edges = new Edge[size];
+        for (int i = 0; i < size; i++)
+            edges[i] = new Edge().targetId(ids[i]).targetLabel(labels[ids[i]]).score(scores[i]);
+        Arrays.sort(edges, (a, b) -> Double.compare(b.score(), a.score()));
+        return edges;
+    }
+}
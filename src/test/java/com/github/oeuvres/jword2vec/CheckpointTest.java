@@ -0,0 +1,106 @@
+package com.github.oeuvres.jword2vec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.oeuvres.jword2vec.neuralnetwork.Checkpoint;
+import com.github.oeuvres.jword2vec.neuralnetwork.NeuralNetworkType;
+import com.google.common.base.Joiner;
+
+/**
+ * Tests that a training resumed from a {@link Checkpoint} ends as the
+ * uninterrupted one. With one thread, the training is deterministic.
+ */
+public class CheckpointTest
+{
+    private Path directory;
+    private Path textFile;
+
+    @Before
+    public void write() throws IOException
+    {
+        directory = Files.createTempDirectory(CheckpointTest.class.getSimpleName());
+        textFile = directory.resolve("corpus.txt");
+        List<String> lines = new ArrayList<>();
+        for (List<String> sentence : CorpusFileTest.sentences()) {
+            lines.add(Joiner.on(' ').join(sentence));
+        }
+        Files.write(textFile, lines, StandardCharsets.UTF_8);
+    }
+
+    private VecTrainerBuilder builder()
+    {
+        return VecModel.trainer().type(NeuralNetworkType.SKIP_GRAM).useNegativeSamples(5).useHierarchicalSoftmax()
+                .setLayerSize(20).setNumIterations(2).useNumThreads(1)
+                .useCheckpoints(directory.resolve("checkpoints"), 1, TimeUnit.MILLISECONDS)
+                .setListener((stage, progress) -> {
+                });
+    }
+
+    /** @return All the vectors of a model */
+    private static double[] vectors(VecModel model)
+    {
+        final double[] vectors = new double[model.vectors.limit()];
+        model.vectors.duplicate().get(vectors);
+        return vectors;
+    }
+
+    /**
+     * Tests resuming the training of a text file
+     */
+    @Test
+    public void testResumeTextFile() throws IOException, InterruptedException
+    {
+        VecModel model = builder().train(textFile);
+        assertTrue(Checkpoint.exists(directory.resolve("checkpoints")));
+        VecModel resumed = builder().resumeFromCheckpoint().train(textFile);
+        assertArrayEquals(model.vocab, resumed.vocab);
+        assertArrayEquals(vectors(model), vectors(resumed), 0);
+    }
+
+    /**
+     * Tests resuming the training of a stream, the sentences already trained are
+     * skipped
+     */
+    @Test
+    public void testResumeStream() throws IOException, InterruptedException
+    {
+        VecModel model = builder().train(() -> lines());
+        VecModel resumed = builder().resumeFromCheckpoint().train(() -> lines());
+        assertArrayEquals(model.vocab, resumed.vocab);
+        assertArrayEquals(vectors(model), vectors(resumed), 0);
+    }
+
+    private Stream<List<String>> lines()
+    {
+        try {
+            return Files.lines(textFile).map(line -> Arrays.asList(line.split(" ")));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @After
+    public void cleanup() throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+                Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.oeuvres.jword2vec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.oeuvres.jword2vec.neuralnetwork.NeuralNetworkType;
+
+/**
+ * Tests training a model again on new sentences. With a learning rate of 0, the
+ * vectors of the words of the previous model are kept as they are.
+ */
+public class ContinueTrainingTest
+{
+    private Path directory;
+    private List<List<String>> first;
+    private List<List<String>> second;
+
+    @Before
+    public void split() throws IOException
+    {
+        directory = Files.createTempDirectory(ContinueTrainingTest.class.getSimpleName());
+        final List<List<String>> sentences = CorpusFileTest.sentences();
+        first = sentences.subList(0, sentences.size() / 2);
+        second = sentences.subList(sentences.size() / 2, sentences.size());
+    }
+
+    private static VecTrainerBuilder builder()
+    {
+        return VecModel.trainer().type(NeuralNetworkType.CBOW).useNegativeSamples(5).setLayerSize(20)
+                .setNumIterations(1).useNumThreads(2).setListener((stage, progress) -> {
+                });
+    }
+
+    /** @return Vector of a word */
+    private static double[] vector(VecModel model, String word)
+    {
+        final double[] vector = new double[model.layerSize];
+        model.vectors.get(model.word4id.get(word) * model.layerSize, vector);
+        return vector;
+    }
+
+    /** Tests that the words of the model are kept, with their vectors */
+    private void assertContinued(VecModel previous, VecModel model)
+    {
+        assertTrue(model.vocab.length > previous.vocab.length);
+        for (String word : previous.vocab) {
+            assertArrayEquals(word, vector(previous, word), vector(model, word), 0);
+        }
+    }
+
+    /**
+     * Tests training again from the vectors of a model
+     */
+    @Test
+    public void testContinueFromModel() throws InterruptedException
+    {
+        final VecModel previous = builder().train(first);
+        final VecModel model = builder().continueFrom(previous).setInitialLearningRate(0).train(second);
+        assertContinued(previous, model);
+    }
+
+    /**
+     * Tests training again from the final checkpoint of a training
+     */
+    @Test
+    public void testContinueFromCheckpoint() throws InterruptedException
+    {
+        final Path checkpoints = directory.resolve("checkpoints");
+        final VecModel previous = builder().useCheckpoints(checkpoints, 1, TimeUnit.HOURS).train(first);
+        final VecModel model = builder().continueFromCheckpoint(checkpoints).setInitialLearningRate(0)
+                .train(second);
+        assertContinued(previous, model);
+        assertTrue(Arrays.asList(model.vocab).containsAll(Arrays.asList(previous.vocab)));
+    }
+
+    @After
+    public void cleanup() throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+                Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.oeuvres.jword2vec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.github.oeuvres.jword2vec.neuralnetwork.NeuralNetworkType;
+import com.github.oeuvres.jword2vec.util.Common;
+import com.google.common.collect.Lists;
+
+/**
+ * Tests the binary corpus written by {@link CorpusFile}.
+ */
+public class CorpusFileTest
+{
+    private Path tempFile = null;
+
+    /** @return Tokens of the test corpus, in sentences of variable length */
+    static List<List<String>> sentences() throws IOException
+    {
+        List<String> tokens = Common.readResource(CorpusFileTest.class, "word2vec.short.txt");
+        List<List<String>> sentences = new ArrayList<>();
+        int from = 0;
+        int size = 1;
+        while (from < tokens.size()) {
+            int to = Math.min(tokens.size(), from + size);
+            sentences.add(new ArrayList<>(tokens.subList(from, to)));
+            from = to;
+            size = size % 37 + 1;
+        }
+        return sentences;
+    }
+
+    /**
+     * Tests that sentences are read back in order, exactly once, whatever the
+     * split of the file
+     */
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        final List<List<String>> sentences = sentences();
+        tempFile = Files.createTempFile(String.format("%s-", CorpusFileTest.class.getSimpleName()), ".bin");
+        try (CorpusFile corpus = CorpusFile.write(sentences, tempFile)) {
+            assertEquals(sentences.size(), corpus.sentences());
+            for (int parts : new int[] { 1, 3, 7 }) {
+                final long[] offsets = corpus.split(parts);
+                List<List<String>> read = new ArrayList<>();
+                for (int i = 0; i < parts; i++) {
+                    CorpusFile.Cursor cursor = corpus.cursor(offsets[i], offsets[i + 1]);
+                    while (cursor.next()) {
+                        List<String> sentence = new ArrayList<>();
+                        for (int j = 0; j < cursor.length(); j++) {
+                            sentence.add(corpus.word(cursor.ids()[j]));
+                        }
+                        read.add(sentence);
+                    }
+                }
+                assertEquals(sentences, read);
+            }
+        }
+    }
+
+    /**
+     * Tests that a model trained from the corpus file has the vocabulary of the
+     * sentences
+     */
+    @Test
+    public void testTrain() throws IOException, InterruptedException
+    {
+        final List<List<String>> sentences = sentences();
+        tempFile = Files.createTempFile(String.format("%s-", CorpusFileTest.class.getSimpleName()), ".bin");
+        try (CorpusFile corpus = CorpusFile.write(sentences, tempFile)) {
+            VecModel model = VecModel.trainer().type(NeuralNetworkType.SKIP_GRAM).useNegativeSamples(5)
+                    .setLayerSize(20).setNumIterations(1).useNumThreads(2).setListener((stage, progress) -> {
+                    }).train(corpus);
+            VecModel reference = VecModel.trainer().type(NeuralNetworkType.SKIP_GRAM).useNegativeSamples(5)
+                    .setLayerSize(20).setNumIterations(1).useNumThreads(2).setListener((stage, progress) -> {
+                    }).train(sentences);
+            assertEquals(Lists.newArrayList(reference.vocab), Lists.newArrayList(model.vocab));
+            assertTrue(model.contains("anarchism"));
+        }
+    }
+
+    @After
+    public void cleanupTempFile() throws IOException
+    {
+        if (tempFile != null)
+            Files.delete(tempFile);
+    }
+}
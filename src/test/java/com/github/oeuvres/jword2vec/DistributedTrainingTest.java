@@ -0,0 +1,192 @@
+package com.github.oeuvres.jword2vec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.oeuvres.jword2vec.neuralnetwork.MappedFileTransport;
+import com.github.oeuvres.jword2vec.neuralnetwork.NeuralNetworkType;
+import com.github.oeuvres.jword2vec.neuralnetwork.ParameterTransport;
+import com.github.oeuvres.jword2vec.neuralnetwork.SocketTransport;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+
+/**
+ * Tests a training distributed on two JVMs, this one and a child one, each
+ * training half of the sentences. Both end with the same model.
+ */
+public class DistributedTrainingTest
+{
+    private static final int SIZE = 2;
+    private Path directory;
+
+    @Before
+    public void directory() throws IOException
+    {
+        directory = Files.createTempDirectory(DistributedTrainingTest.class.getSimpleName());
+    }
+
+    /** Train the shard of a process, with the vocabulary of all the sentences */
+    private static VecModel train(ParameterTransport transport) throws IOException, InterruptedException
+    {
+        return train(transport, 5);
+    }
+
+    private static VecModel train(ParameterTransport transport, int windowSize)
+            throws IOException, InterruptedException
+    {
+        final List<List<String>> sentences = CorpusFileTest.sentences();
+        final Multiset<String> vocab = HashMultiset.create();
+        final List<List<String>> shard = new ArrayList<>();
+        for (int i = 0; i < sentences.size(); i++) {
+            vocab.addAll(sentences.get(i));
+            if (i % transport.size() == transport.rank())
+                shard.add(sentences.get(i));
+        }
+        return VecModel.trainer().type(NeuralNetworkType.SKIP_GRAM).useNegativeSamples(5).setLayerSize(20)
+                .setNumIterations(2).useNumThreads(2).setWindowSize(windowSize).useVocab(vocab)
+                .distribute(transport, 50, TimeUnit.MILLISECONDS).setListener((stage, progress) -> {
+                }).train(shard);
+    }
+
+    private static ParameterTransport transport(String kind, String address, int rank)
+            throws IOException, InterruptedException
+    {
+        if ("socket".equals(kind))
+            return SocketTransport.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                    Integer.parseInt(address)), rank, SIZE, 1, TimeUnit.MINUTES);
+        return MappedFileTransport.open(Paths.get(address), rank, SIZE, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Process of rank 1, writes its model
+     * 
+     * @param args Kind of transport, address, file of the model
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        try (ParameterTransport transport = transport(args[0], args[1], 1);
+                OutputStream out = Files.newOutputStream(Paths.get(args[2]))) {
+            train(transport).toBinFile(out);
+        }
+    }
+
+    /** Train with a child JVM, test that both have the same model */
+    private void assertDistributed(String kind, String address) throws IOException, InterruptedException
+    {
+        final Path model = directory.resolve("model.bin");
+        final String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        final Process child = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                DistributedTrainingTest.class.getName(), kind, address, model.toString()).inheritIO().start();
+        final VecModel local;
+        try (ParameterTransport transport = transport(kind, address, 0)) {
+            local = train(transport);
+        } finally {
+            child.waitFor(1, TimeUnit.MINUTES);
+        }
+        assertEquals(0, child.exitValue());
+        final VecModel remote = VecModel.fromBinFile(model.toFile());
+        assertArrayEquals(local.vocab, remote.vocab);
+        for (String word : local.vocab) {
+            assertArrayEquals(word, vector(local, word), vector(remote, word), 0);
+        }
+    }
+
+    /** @return Vector of a word, as written in a file */
+    private static double[] vector(VecModel model, String word)
+    {
+        final double[] vector = new double[model.layerSize];
+        model.vectors.get(model.word4id.get(word) * model.layerSize, vector);
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) vector[i];
+        }
+        return vector;
+    }
+
+    /**
+     * Tests a training through a shared memory mapped file
+     */
+    @Test
+    public void testMappedFile() throws IOException, InterruptedException
+    {
+        assertDistributed("file", directory.resolve("weights").toString());
+    }
+
+    /**
+     * Tests a training through sockets
+     */
+    @Test
+    public void testSocket() throws IOException, InterruptedException
+    {
+        final int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        assertDistributed("socket", Integer.toString(port));
+    }
+
+    /**
+     * Tests that processes with another setting than the vocabulary fail rather
+     * than average their weights, both of them
+     */
+    @Test
+    public void testDisagree() throws Exception
+    {
+        final Path file = directory.resolve("weights");
+        final ExecutorService ex = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> remote = ex.submit(() -> {
+                try (ParameterTransport transport = transport("file", file.toString(), 1)) {
+                    return train(transport, 3);
+                }
+            });
+            try (ParameterTransport transport = transport("file", file.toString(), 0)) {
+                train(transport, 5);
+                fail();
+            } catch (IllegalStateException e) {
+                assertEquals("Processes with another vocabulary or configuration", e.getMessage());
+            }
+            try {
+                remote.get(1, TimeUnit.MINUTES);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        } finally {
+            ex.shutdownNow();
+        }
+    }
+
+    @After
+    public void cleanup() throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+                Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.oeuvres.jword2vec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMultiset;
+
+/**
+ * Tests the vectors of documents, in bulk as one by one.
+ */
+public class DocumentEmbedderTest
+{
+    private static final double DELTA = 1e-12;
+
+    private static VecModel model()
+    {
+        return new VecModel(new String[] { "a", "b", "c" }, 2, new double[] { 1, 0, 0, 1, 1, 1 });
+    }
+
+    /**
+     * Tests the mean and the weighted mean of a few documents
+     */
+    @Test
+    public void testMean()
+    {
+        final DocumentEmbedder embedder = model().embedder();
+        assertArrayEquals(new double[] { 0.5, 0.5 }, embedder.embed(new String[] { "a", "b", "unknown" }), DELTA);
+        assertArrayEquals(new double[] { 0, 0 }, embedder.embed(new String[] { "unknown" }), DELTA);
+        embedder.useWeights(word -> word.equals("a") ? 3 : 1);
+        assertArrayEquals(new double[] { 0.75, 0.25 }, embedder.embed(new String[] { "a", "b" }), DELTA);
+        // a is 3 times more frequent than b, so it weighs less
+        embedder.useSifWeights(ImmutableMultiset.of("a", "a", "a", "b"), 0.25);
+        final double a = 0.25 / (0.25 + 0.75);
+        final double b = 0.25 / (0.25 + 0.25);
+        assertArrayEquals(new double[] { a / (a + b), b / (a + b) }, embedder.embed(new String[] { "a", "b" }),
+                DELTA);
+    }
+
+    /**
+     * Tests that the vectors in bulk, in a buffer and in a file, are those of the
+     * documents one by one, in the order of the stream
+     */
+    @Test
+    public void testBulk() throws IOException, InterruptedException
+    {
+        final String[] words = { "a", "b", "c", "unknown" };
+        final List<String[]> documents = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            final int doc = i;
+            documents.add(IntStream.range(0, doc % 7).mapToObj(j -> words[(doc + j * j) % words.length])
+                    .toArray(String[]::new));
+        }
+        final DocumentEmbedder embedder = model().embedder().useNumThreads(3);
+        final DoubleBuffer buffer = DoubleBuffer.allocate(documents.size() * 2);
+        assertEquals(documents.size(), embedder.embed(documents.stream(), buffer));
+
+        final Path file = Files.createTempFile(DocumentEmbedderTest.class.getSimpleName(), ".bin");
+        try {
+            assertEquals(documents.size(), embedder.embed(documents.stream(), file));
+            final DoubleBuffer mapped;
+            try (FileChannel channel = FileChannel.open(file)) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN)
+                        .asDoubleBuffer();
+            }
+            assertEquals(buffer.capacity(), mapped.capacity());
+            for (int i = 0; i < documents.size(); i++) {
+                final double[] expected = embedder.embed(documents.get(i));
+                assertEquals(expected[0], buffer.get(i * 2), DELTA);
+                assertEquals(expected[1], buffer.get(i * 2 + 1), DELTA);
+                assertEquals(expected[0], mapped.get(i * 2), DELTA);
+                assertEquals(expected[1], mapped.get(i * 2 + 1), DELTA);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
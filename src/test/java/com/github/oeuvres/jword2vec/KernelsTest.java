@@ -0,0 +1,63 @@
+package com.github.oeuvres.jword2vec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.github.oeuvres.jword2vec.util.Kernels;
+
+/**
+ * Tests that the Vector API {@link Kernels} compute as the plain Java ones,
+ * when built with the profile <code>vector</code>.
+ */
+public class KernelsTest
+{
+    private static final double DELTA = 1e-12;
+
+    private static double[] random(Random random, int length)
+    {
+        final double[] x = new double[length];
+        for (int i = 0; i < length; i++) {
+            x[i] = random.nextDouble() - 0.5;
+        }
+        return x;
+    }
+
+    /**
+     * Tests each kernel on lengths with a tail shorter than a vector, and with
+     * offsets
+     */
+    @Test
+    public void testVectorAsScalar()
+    {
+        final Kernels vector = Kernels.vector();
+        Assume.assumeNotNull(vector);
+        final Kernels scalar = Kernels.scalar();
+        final Random random = new Random(7);
+        for (int length : new int[] { 1, 7, 100, 301 }) {
+            final double[] x = random(random, length + 3);
+            final double[] y = random(random, length + 5);
+            final double[] z = random(random, length);
+            assertEquals(scalar.dot(x, 3, y, 5, length), vector.dot(x, 3, y, 5, length), DELTA);
+
+            final double[] ys = y.clone(), yv = y.clone();
+            scalar.axpy(0.3, x, 3, ys, 5, length);
+            vector.axpy(0.3, x, 3, yv, 5, length);
+            assertArrayEquals(ys, yv, DELTA);
+
+            final double[] zs = z.clone(), zv = z.clone();
+            scalar.axpy2(-0.2, x, 3, ys, 5, zs, 0, length);
+            vector.axpy2(-0.2, x, 3, yv, 5, zv, 0, length);
+            assertArrayEquals(ys, yv, DELTA);
+            assertArrayEquals(zs, zv, DELTA);
+
+            scalar.scale(0.5, zs, 0, length);
+            vector.scale(0.5, zv, 0, length);
+            assertArrayEquals(zs, zv, DELTA);
+        }
+    }
+}
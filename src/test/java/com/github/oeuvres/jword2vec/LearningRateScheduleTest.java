@@ -0,0 +1,37 @@
+package com.github.oeuvres.jword2vec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.github.oeuvres.jword2vec.neuralnetwork.LearningRateSchedule;
+
+/**
+ * Tests the shapes of the {@link LearningRateSchedule}s.
+ */
+public class LearningRateScheduleTest
+{
+    private static final double DELTA = 1e-12;
+
+    /**
+     * Tests the start, middle and end of each schedule
+     */
+    @Test
+    public void testRates()
+    {
+        assertEquals(0.025, LearningRateSchedule.LINEAR.rate(0.025, 0), DELTA);
+        assertEquals(0.0125, LearningRateSchedule.LINEAR.rate(0.025, 0.5), DELTA);
+        assertEquals(0.025 * 0.0001, LearningRateSchedule.LINEAR.rate(0.025, 1), DELTA);
+        // progress may go a bit beyond the end
+        assertEquals(0.025 * 0.0001, LearningRateSchedule.LINEAR.rate(0.025, 1.2), DELTA);
+
+        assertEquals(0.025 * 0.0001, LearningRateSchedule.WARMUP.rate(0.025, 0), DELTA);
+        assertEquals(0.025, LearningRateSchedule.WARMUP.rate(0.025, 0.05), DELTA);
+        assertTrue(LearningRateSchedule.WARMUP.rate(0.025, 0.5) < 0.025);
+
+        assertEquals(0.025, LearningRateSchedule.COSINE.rate(0.025, 0), DELTA);
+        assertEquals(0.0125, LearningRateSchedule.COSINE.rate(0.025, 0.5), DELTA);
+        assertTrue(LearningRateSchedule.COSINE.rate(0.025, 0.25) > LearningRateSchedule.LINEAR.rate(0.025, 0.25));
+    }
+}
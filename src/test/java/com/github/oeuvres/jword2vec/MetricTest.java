@@ -0,0 +1,114 @@
+package com.github.oeuvres.jword2vec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import com.github.oeuvres.alix.util.Edge;
+import com.github.oeuvres.jword2vec.VecSearch.UnknownWordException;
+
+/**
+ * Tests each metric against a plain computation on the raw vectors.
+ */
+public class MetricTest
+{
+    private static final int LAYER_SIZE = 12;
+
+    private static VecModel model()
+    {
+        final VecModel model = RandomModels.randomModel(13, 1_000, LAYER_SIZE);
+        // vectors of different norms
+        for (int i = 0; i < model.vectors.limit(); i++)
+            model.vectors.put(i, model.vectors.get(i) * (1 + (i / LAYER_SIZE) % 5));
+        return model;
+    }
+
+    private static double[] vector(VecModel model, int id)
+    {
+        final double[] vector = new double[LAYER_SIZE];
+        model.vectors.get(id * LAYER_SIZE, vector);
+        return vector;
+    }
+
+    /** @return Value of a metric on raw vectors, the larger the nearer */
+    private static double score(Metric metric, double[] x, double[] y)
+    {
+        double dot = 0, xx = 0, yy = 0, square = 0, abs = 0;
+        for (int i = 0; i < x.length; i++) {
+            dot += x[i] * y[i];
+            xx += x[i] * x[i];
+            yy += y[i] * y[i];
+            square += (x[i] - y[i]) * (x[i] - y[i]);
+            abs += Math.abs(x[i] - y[i]);
+        }
+        switch (metric) {
+        case DOT:
+            return dot;
+        case COSINE:
+            return dot / Math.sqrt(xx * yy);
+        case EUCLIDEAN:
+            return -Math.sqrt(square);
+        default:
+            return -abs;
+        }
+    }
+
+    /**
+     * Tests the nearest words of each metric, and that the raw model is left
+     * unchanged
+     */
+    @Test
+    public void testMetrics() throws UnknownWordException
+    {
+        final VecModel model = model();
+        final double[] raw = vector(model, 7);
+        for (Metric metric : Metric.values()) {
+            final VecSearch search = model.forSearch(metric);
+            assertSame(metric, search.metric());
+            final double[] query = vector(model, 7);
+            final Integer[] expected = IntStream.range(0, model.vocab.length).boxed()
+                    .sorted(Comparator.comparingDouble((Integer id) -> -score(metric, query, vector(model, id))))
+                    .toArray(Integer[]::new);
+            final Edge[] edges = search.sims(new String[] { "w7" }, 10);
+            for (int i = 0; i < edges.length; i++) {
+                assertEquals(metric + " " + i, (int) expected[i], edges[i].targetId());
+                final double value = score(metric, query, vector(model, expected[i]));
+                assertEquals(metric.normalized || metric == Metric.DOT ? value : -value, edges[i].score(), 1e-9);
+            }
+        }
+        assertArrayEquals(raw, vector(model, 7), 0);
+    }
+
+    /**
+     * Tests that the neighbor graph is written with the metric of the search
+     */
+    @Test
+    public void testGraph() throws IOException, InterruptedException, UnknownWordException
+    {
+        final VecModel model = model();
+        final VecSearch search = model.forSearch(Metric.EUCLIDEAN);
+        final Path file = Files.createTempFile("graph", ".bin");
+        try {
+            Files.delete(file);
+            search.graphWriter(5).write(file);
+            try (NeighborGraph graph = NeighborGraph.open(file, model)) {
+                assertSame(Metric.EUCLIDEAN, graph.metric());
+                final Edge[] expected = search.sims(new String[] { "w3" }, 6);
+                final Edge[] edges = graph.neighbors("w3");
+                assertEquals(Arrays.toString(edges), expected[1].targetId(), edges[0].targetId());
+                assertEquals(expected[5].score(), edges[4].score(), 1e-5);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
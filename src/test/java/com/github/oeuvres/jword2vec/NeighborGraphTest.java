@@ -0,0 +1,92 @@
+package com.github.oeuvres.jword2vec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.github.oeuvres.alix.util.Edge;
+import com.github.oeuvres.jword2vec.VecSearch.UnknownWordException;
+
+/**
+ * Tests that the neighbor graph is the search of each word, and that an
+ * interrupted writing is resumed.
+ */
+public class NeighborGraphTest
+{
+    private static final int K = 10;
+
+    /**
+     * Tests the neighbors of each word against {@link VecSearch#sims(String[], int)}
+     */
+    @Test
+    public void testGraph() throws IOException, InterruptedException, UnknownWordException
+    {
+        final VecModel model = RandomModels.randomModel(7, 300, 16);
+        final VecSearch search = model.forSearch();
+        final Path file = Files.createTempFile("graph", ".bin");
+        try {
+            Files.delete(file);
+            final AtomicLong progress = new AtomicLong();
+            assertEquals(model.vocab.length, search.graphWriter(K).useNumThreads(3)
+                    .setListener((done, total) -> progress.set(done)).write(file));
+            assertEquals(model.vocab.length, progress.get());
+            try (NeighborGraph graph = NeighborGraph.open(file, model)) {
+                assertEquals(K, graph.k());
+                assertEquals(model.vocab.length, graph.size());
+                assertNull(graph.neighbors("unknown"));
+                for (String word : model.vocab) {
+                    final Edge[] expected = search.sims(new String[] { word }, K + 1);
+                    final Edge[] edges = graph.neighbors(word);
+                    assertEquals(K, edges.length);
+                    for (int i = 0; i < K; i++) {
+                        assertEquals(word, edges[i].sourceLabel());
+                        assertEquals(expected[i + 1].targetLabel(), edges[i].targetLabel());
+                        assertEquals(expected[i + 1].score(), edges[i].score(), 1e-6);
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Tests that a file with only its first words done is completed as a file
+     * written at once
+     */
+    @Test
+    public void testResume() throws IOException, InterruptedException
+    {
+        final VecModel model = RandomModels.randomModel(7, 300, 16);
+        final Path full = Files.createTempFile("graph", ".bin");
+        final Path partial = Files.createTempFile("graph", ".bin");
+        try {
+            Files.delete(full);
+            model.forSearch().graphWriter(K).write(full);
+            Files.copy(full, partial, StandardCopyOption.REPLACE_EXISTING);
+            try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.WRITE)) {
+                final long done = 100;
+                channel.write(ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(0, done),
+                        NeighborGraph.DONE_POSITION);
+                channel.truncate(NeighborGraph.HEADER_BYTES + done * NeighborGraph.recordBytes(K) + 12);
+            }
+            assertEquals(model.vocab.length - 100, model.forSearch().graphWriter(K).write(partial));
+            assertArrayEquals(Files.readAllBytes(full), Files.readAllBytes(partial));
+        } finally {
+            Files.deleteIfExists(full);
+            Files.deleteIfExists(partial);
+        }
+    }
+}
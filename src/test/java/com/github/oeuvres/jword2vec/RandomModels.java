@@ -0,0 +1,27 @@
+package com.github.oeuvres.jword2vec;
+
+import java.util.Random;
+
+/**
+ * Models of random vectors for the tests of the searches.
+ */
+class RandomModels
+{
+    /**
+     * @param seed      Seed of the random values
+     * @param words     Size of the vocabulary, words “w0”, “w1”…
+     * @param layerSize Size of the vectors
+     * @return Model of gaussian vectors, always the same for a seed
+     */
+    static VecModel randomModel(long seed, int words, int layerSize)
+    {
+        final Random random = new Random(seed);
+        final String[] vocab = new String[words];
+        final double[] vectors = new double[words * layerSize];
+        for (int i = 0; i < words; i++)
+            vocab[i] = "w" + i;
+        for (int i = 0; i < vectors.length; i++)
+            vectors[i] = random.nextGaussian();
+        return new VecModel(vocab, layerSize, vectors);
+    }
+}
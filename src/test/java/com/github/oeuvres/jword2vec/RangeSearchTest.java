@@ -0,0 +1,113 @@
+package com.github.oeuvres.jword2vec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.github.oeuvres.alix.util.Edge;
+import com.github.oeuvres.jword2vec.VecSearch.UnknownWordException;
+
+/**
+ * Tests the range searches against the cosines of all the words.
+ */
+public class RangeSearchTest
+{
+    private static final int LAYER_SIZE = 20;
+
+    private static VecModel model()
+    {
+        final VecModel model = RandomModels.randomModel(3, 10_000, LAYER_SIZE);
+        // a null vector is never found
+        for (int i = 0; i < LAYER_SIZE; i++)
+            model.vectors.put(i, 0);
+        return model;
+    }
+
+    /** @return Count of the words with a cosine at least a threshold */
+    private static int count(VecModel model, double[] query, double threshold)
+    {
+        double norm = 0;
+        for (double x : query)
+            norm += x * x;
+        int count = 0;
+        for (int id = 0; id < model.vocab.length; id++) {
+            double dot = 0;
+            double square = 0;
+            for (int i = 0; i < LAYER_SIZE; i++) {
+                final double x = model.vectors.get(id * LAYER_SIZE + i);
+                dot += query[i] * x;
+                square += x * x;
+            }
+            if (square > 0 && dot / Math.sqrt(norm * square) >= threshold)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Tests single and batched queries, with thresholds from all the words to a
+     * few
+     */
+    @Test
+    public void testRange() throws UnknownWordException
+    {
+        final VecModel model = model();
+        final Random random = new Random(3);
+        final VecSearch search = model.forSearch();
+        final double[] thresholds = { -1, 0, 0.5, 0.7, 0.9 };
+        final double[][] queries = new double[thresholds.length][LAYER_SIZE];
+        for (double[] query : queries)
+            for (int i = 0; i < LAYER_SIZE; i++)
+                query[i] = random.nextGaussian();
+        final Edge[][] results = search.range(queries, thresholds);
+        for (int q = 0; q < queries.length; q++) {
+            assertEquals(count(model, queries[q], thresholds[q]), results[q].length);
+            assertEquals(results[q].length, search.range(queries[q], thresholds[q]).length);
+            for (int i = 0; i < results[q].length; i++) {
+                assertTrue(results[q][i].score() >= thresholds[q]);
+                assertTrue(i == 0 || results[q][i].score() <= results[q][i - 1].score());
+            }
+        }
+        assertEquals(model.vocab.length - 1, results[0].length);
+
+        final Edge[] words = search.range(new String[] { "w42" }, 0.999);
+        assertEquals(1, words.length);
+        assertEquals("w42", words[0].targetLabel());
+        assertEquals(1, words[0].score(), 1e-9);
+        assertEquals(0, search.range(new double[LAYER_SIZE], -1).length);
+    }
+
+    /**
+     * Tests that a filter gives the words of the search without filter that it
+     * accepts, and excludes the query words
+     */
+    @Test
+    public void testFilter() throws UnknownWordException
+    {
+        final VecModel model = model();
+        final VecSearch search = model.forSearch();
+        final SearchFilter even = search.filter(word -> Integer.parseInt(word.substring(1)) % 2 == 0);
+        final Edge[] all = search.range(new String[] { "w42" }, 0.3);
+        final Edge[] filtered = search.range(new String[] { "w42" }, 0.3, even);
+        final List<String> expected = new ArrayList<>();
+        for (Edge edge : all)
+            if (!edge.targetLabel().equals("w42") && Integer.parseInt(edge.targetLabel().substring(1)) % 2 == 0)
+                expected.add(edge.targetLabel());
+        assertTrue(expected.size() > 0);
+        assertEquals(expected, Arrays.stream(filtered).map(Edge::targetLabel).collect(Collectors.toList()));
+
+        assertEquals(0, search.range(new String[] { "w42" }, 0.999, SearchFilter.all()).length);
+        assertEquals(1, search.range(new String[] { "w42" }, 0.999, SearchFilter.all().includeQueryWords()).length);
+        // all the even words but w0, null
+        final double[] vec = new double[LAYER_SIZE];
+        Arrays.fill(vec, 1);
+        assertEquals(model.vocab.length / 2 - 1, search.range(vec, -1, even).length);
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.oeuvres.jword2vec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.oeuvres.alix.util.Edge;
+import com.github.oeuvres.jword2vec.VecSearch.UnknownWordException;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+
+/**
+ * Tests the searches restricted to the first words, and the batched searches.
+ */
+public class RestrictSearchTest
+{
+    /**
+     * Tests that the restricted search is the full search without the words
+     * beyond, and that the batched search is the search of each query
+     */
+    @Test
+    public void testRestrict() throws UnknownWordException
+    {
+        final VecModel model = RandomModels.randomModel(5, 1_000, 8);
+        final VecSearch all = model.forSearch();
+        final VecSearch first = model.forSearch().useCache(10_000).restrictTo(100);
+        assertEquals(100, first.candidates());
+
+        final String[] query = { "w500" };
+        final Edge[] expected = all.sims(query, 1_000);
+        final Edge[] edges = first.sims(query, 20);
+        int j = 0;
+        for (Edge edge : expected) {
+            if (edge.targetId() >= 100)
+                continue;
+            assertEquals(edge.targetLabel(), edges[j].targetLabel());
+            assertEquals(edge.score(), edges[j].score(), 0);
+            if (++j == edges.length)
+                break;
+        }
+        assertEquals(20, j);
+        // the cache does not serve the full search to the restricted one
+        first.restrictTo(model.vocab.length);
+        assertEquals(expected[0].targetLabel(), first.sims(query, 5)[0].targetLabel());
+        assertEquals(0, first.cacheStats().hitCount());
+        assertEquals(2, first.cacheStats().missCount());
+
+        final double[][] vecs = new double[3][8];
+        final Random random = new Random(9);
+        for (double[] vec : vecs)
+            for (int i = 0; i < vec.length; i++)
+                vec[i] = random.nextGaussian();
+        first.restrictTo(100);
+        final Edge[][] results = first.sims(vecs, 10);
+        for (int q = 0; q < vecs.length; q++) {
+            final Edge[] single = first.sims(vecs[q], 10);
+            assertEquals(single.length, results[q].length);
+            for (int i = 0; i < single.length; i++) {
+                assertTrue(results[q][i].targetId() < 100);
+                assertEquals(single[i].targetLabel(), results[q][i].targetLabel());
+            }
+            for (Edge edge : first.range(vecs[q], 0.5))
+                assertTrue(edge.targetId() < 100);
+        }
+    }
+
+    /**
+     * Tests the count of words searched from the counts of the corpus
+     */
+    @Test
+    public void testCounts()
+    {
+        final VecModel model = RandomModels.randomModel(5, 1_000, 8);
+        final Multiset<String> counts = HashMultiset.create();
+        for (int i = 0; i < model.vocab.length; i++)
+            counts.add(model.vocab[i], model.vocab.length - i);
+        assertEquals(301, model.forSearch().restrictTo(counts, 700).candidates());
+    }
+}
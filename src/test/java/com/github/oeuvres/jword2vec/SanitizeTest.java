@@ -0,0 +1,58 @@
+package com.github.oeuvres.jword2vec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.github.oeuvres.alix.util.Edge;
+import com.github.oeuvres.jword2vec.VecSearch.UnknownWordException;
+
+/**
+ * Tests that values not finite are repaired at loading, and that null vectors
+ * stay null once normalized.
+ */
+public class SanitizeTest
+{
+    /**
+     * Tests a text file with NaN, infinite and null vectors
+     */
+    @Test
+    public void testRepair() throws IOException, UnknownWordException
+    {
+        final File file = File.createTempFile("vectors", ".txt");
+        try {
+            Files.write(file.toPath(), Arrays.asList("4 2", "a 1 0", "b NaN 1", "c Infinity -Infinity", "d 0 0"));
+            final VecModel model = VecModel.fromTextFile(file);
+            assertEquals(Arrays.asList("b", "c"), model.repairedWords());
+            final double[] vectors = new double[8];
+            model.vectors.get(0, vectors);
+            assertArrayEquals(new double[] { 1, 0, 0, 1, 0, 0, 0, 0 }, vectors, 0);
+
+            final NormalizedWord2VecModel normalized = NormalizedWord2VecModel.fromWord2VecModel(model);
+            assertEquals(Arrays.asList("b", "c"), normalized.repairedWords());
+            assertEquals(Arrays.asList("c", "d"), normalized.nullWords());
+            normalized.vectors.get(0, vectors);
+            assertArrayEquals(new double[] { 1, 0, 0, 1, 0, 0, 0, 0 }, vectors, 0);
+
+            final VecSearch search = model.forSearch();
+            final Edge[] edges = search.sims(new String[] { "a", "b" }, 4);
+            assertEquals(4, edges.length);
+            assertEquals(0.5, edges[0].score(), 1e-12);
+            try {
+                search.sims(new double[] { Double.NaN, 0 }, 4);
+                fail();
+            }
+            catch (IllegalArgumentException e) {
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
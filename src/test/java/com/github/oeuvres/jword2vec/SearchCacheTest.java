@@ -0,0 +1,77 @@
+package com.github.oeuvres.jword2vec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.github.oeuvres.alix.util.Edge;
+import com.github.oeuvres.jword2vec.VecSearch.UnknownWordException;
+
+/**
+ * Tests that cached searches are those without cache, and the statistics of
+ * the cache.
+ */
+public class SearchCacheTest
+{
+    private static VecModel model()
+    {
+        final int size = 50;
+        final String[] vocab = new String[size];
+        final double[] vectors = new double[size * 2];
+        for (int i = 0; i < size; i++) {
+            vocab[i] = "w" + i;
+            vectors[i * 2] = Math.cos(i * 0.1);
+            vectors[i * 2 + 1] = Math.sin(i * 0.1);
+        }
+        return new VecModel(vocab, 2, vectors);
+    }
+
+    private static void assertSame(Edge[] expected, Edge[] actual)
+    {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].targetLabel(), actual[i].targetLabel());
+            assertEquals(expected[i].score(), actual[i].score(), 0);
+        }
+    }
+
+    /**
+     * Tests that smaller k are served from a larger one, in any order of the
+     * words, and that a larger k is a miss
+     */
+    @Test
+    public void testCache() throws UnknownWordException
+    {
+        final VecSearch plain = model().forSearch();
+        final VecSearch cached = model().forSearch().useCache(1_000);
+        final String[] words = { "w3", "w10" };
+
+        assertSame(plain.sims(words, 10), cached.sims(words, 10));
+        assertSame(plain.sims(words, 5), cached.sims(new String[] { "w10", "w3" }, 5));
+        assertSame(plain.sims(words, 10), cached.sims(words, 10));
+        assertEquals(2, cached.cacheStats().hitCount());
+        assertEquals(1, cached.cacheStats().missCount());
+
+        assertSame(plain.sims(words, 20), cached.sims(words, 20));
+        assertEquals(2, cached.cacheStats().missCount());
+        // more than the vocabulary, all the words are cached
+        assertSame(plain.sims(words, 100), cached.sims(words, 100));
+        assertSame(plain.sims(words, 200), cached.sims(words, 200));
+        assertEquals(3, cached.cacheStats().hitCount());
+    }
+
+    /**
+     * Tests that the least recently used queries are evicted beyond the count of
+     * neighbors cached
+     */
+    @Test
+    public void testEviction() throws UnknownWordException
+    {
+        final VecSearch cached = model().forSearch().useCache(30);
+        for (int i = 0; i < 10; i++)
+            cached.sims(new String[] { "w" + i }, 10);
+        assertEquals(10, cached.cacheStats().missCount());
+        assertTrue(cached.cacheStats().evictionCount() >= 7);
+    }
+}
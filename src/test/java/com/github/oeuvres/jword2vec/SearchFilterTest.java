@@ -0,0 +1,74 @@
+package com.github.oeuvres.jword2vec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.oeuvres.alix.util.Edge;
+import com.github.oeuvres.jword2vec.VecSearch.UnknownWordException;
+
+/**
+ * Tests that filtered searches are the full searches filtered afterwards.
+ */
+public class SearchFilterTest
+{
+    /** @return Edges accepted, the first limit */
+    private static List<Edge> filter(Edge[] edges, BitSet ids, int limit)
+    {
+        final List<Edge> list = new ArrayList<>();
+        for (Edge edge : edges)
+            if (ids.get(edge.targetId()) && list.size() < limit)
+                list.add(edge);
+        return list;
+    }
+
+    /**
+     * Tests a selective filter, the query words excluded by default, and the
+     * cache of equal filters
+     */
+    @Test
+    public void testFilter() throws UnknownWordException
+    {
+        final VecModel model = RandomModels.randomModel(11, 2_000, 8);
+        final VecSearch search = model.forSearch().useCache(10_000);
+        final BitSet ids = new BitSet();
+        for (int id = 0; id < model.vocab.length; id += 50)
+            ids.set(id);
+        final String[] query = { "w100" };
+        final List<Edge> expected = filter(search.sims(query, model.vocab.length), ids, 10);
+        assertEquals("w100", expected.get(0).targetLabel());
+
+        final Edge[] edges = search.sims(query, 10, SearchFilter.of(ids).includeQueryWords());
+        assertEquals(10, edges.length);
+        for (int i = 0; i < edges.length; i++) {
+            assertEquals(expected.get(i).targetLabel(), edges[i].targetLabel());
+            assertEquals(expected.get(i).score(), edges[i].score(), 0);
+        }
+        final Edge[] excluded = search.sims(query, 9, SearchFilter.of(ids));
+        for (int i = 0; i < excluded.length; i++)
+            assertEquals(expected.get(i + 1).targetLabel(), excluded[i].targetLabel());
+
+        // a filter of the same words is served by the cache
+        final long hits = search.cacheStats().hitCount();
+        final SearchFilter same = search.filter(word -> Integer.parseInt(word.substring(1)) % 50 == 0);
+        assertEquals(SearchFilter.of(ids), same);
+        search.sims(query, 5, same);
+        assertEquals(hits + 1, search.cacheStats().hitCount());
+
+        // fewer words than asked, all of them
+        assertEquals(ids.cardinality() - 1, search.sims(query, 1_000, same).length);
+        assertEquals(ids.cardinality() - 1, search.sims(query, 2_000, same).length);
+        assertEquals(hits + 2, search.cacheStats().hitCount());
+
+        for (Edge edge : search.sims(new String[] { "w3" }, 20, SearchFilter.all()))
+            assertTrue(!edge.targetLabel().equals("w3"));
+        final Edge[][] batch = search.sims(new double[][] { new double[8] }, 5, SearchFilter.of(ids));
+        for (Edge edge : batch[0])
+            assertTrue(ids.get(edge.targetId()));
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.oeuvres.jword2vec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.github.oeuvres.jword2vec.VecSearch.UnknownWordException;
+
+/**
+ * Tests the statistics of the searches, and their latency buckets.
+ */
+public class SearchStatsTest
+{
+    /**
+     * Tests that each latency is in a bucket whose bounds are within 12.5%
+     */
+    @Test
+    public void testBuckets()
+    {
+        for (long nanos : new long[] { 0, 1, 7, 8, 9, 15, 16, 1_000, 123_456, 1L << 40, Long.MAX_VALUE }) {
+            final int bucket = SearchStats.latencyBucket(nanos);
+            assertTrue(bucket < SearchStats.LATENCY_BUCKETS);
+            assertTrue(nanos <= SearchStats.latencyUpperBound(bucket));
+            assertTrue(bucket == 0 || nanos > SearchStats.latencyUpperBound(bucket - 1));
+            assertTrue(SearchStats.latencyUpperBound(bucket) - nanos <= nanos / 8);
+        }
+        assertEquals(0, SearchStats.limitBucket(1));
+        assertEquals(3, SearchStats.limitBucket(10));
+        assertEquals(6, SearchStats.limitBucket(100));
+    }
+
+    /**
+     * Tests the counts of the searches of an instance, and their deltas
+     */
+    @Test
+    public void testStats() throws UnknownWordException
+    {
+        final VecModel model = new VecModel(new String[] { "a", "b", "c" }, 2, new double[] { 1, 0, 0, 1, 1, 1 });
+        final VecSearch search = model.forSearch();
+        search.sims(new String[] { "a" }, 2);
+        assertEquals(0, search.stats().queries());
+
+        search.recordStats();
+        search.sims(new String[] { "a" }, 2);
+        final SearchStats first = search.stats();
+        search.sims(new String[] { "a", "b" }, 10);
+        search.sims(new double[] { 1, 0 }, 100);
+        try {
+            search.sims(new String[] { "a", "unknown" }, 2);
+            fail();
+        }
+        catch (UnknownWordException e) {
+        }
+        final SearchStats stats = search.stats();
+        assertEquals(4, stats.queries());
+        assertEquals(1, stats.unknownWords());
+        assertEquals(9, stats.vectorsScanned());
+        assertTrue(stats.maxNanos() > 0);
+        assertTrue(stats.percentileNanos(50) <= stats.percentileNanos(100));
+        assertEquals(stats.maxNanos(), stats.percentileNanos(100));
+        final long[] limits = stats.limits();
+        assertEquals(1, limits[1]);
+        assertEquals(1, limits[3]);
+        assertEquals(1, limits[6]);
+
+        final SearchStats delta = stats.minus(first);
+        assertEquals(3, delta.queries());
+        assertEquals(6, delta.vectorsScanned());
+        assertEquals(0, delta.limits()[1]);
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.oeuvres.jword2vec;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.oeuvres.jword2vec.neuralnetwork.NeuralNetworkType;
+
+/**
+ * Tests that {@link NeuralNetworkType#SKIP_GRAM_BATCHED} learns as well as
+ * {@link NeuralNetworkType#SKIP_GRAM}, on a corpus of groups of words which
+ * only appear together.
+ */
+public class SkipGramBatchedTest
+{
+    private static final int GROUPS = 10;
+    private static final int GROUP_SIZE = 10;
+
+    /** @return Sentences of 20 words, all from the same group */
+    private static List<List<String>> sentences()
+    {
+        final Random random = new Random(42);
+        final List<List<String>> sentences = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            final int group = random.nextInt(GROUPS);
+            final List<String> sentence = new ArrayList<>();
+            for (int j = 0; j < 20; j++) {
+                sentence.add("g" + group + "w" + random.nextInt(GROUP_SIZE));
+            }
+            sentences.add(sentence);
+        }
+        return sentences;
+    }
+
+    /** @return Part of the words whose nearest neighbor is in their group */
+    private static double accuracy(NeuralNetworkType type) throws InterruptedException
+    {
+        final VecModel model = VecModel.trainer().type(type).useNegativeSamples(5).setLayerSize(20)
+                .setNumIterations(2).useNumThreads(2).setListener((stage, progress) -> {
+                }).train(sentences());
+        final int size = model.vocab.length;
+        final double[][] vectors = new double[size][model.layerSize];
+        for (int i = 0; i < size; i++) {
+            model.vectors.get(i * model.layerSize, vectors[i]);
+            double norm = 0;
+            for (double d : vectors[i]) {
+                norm += d * d;
+            }
+            norm = Math.sqrt(norm);
+            for (int e = 0; e < model.layerSize; e++) {
+                vectors[i][e] /= norm;
+            }
+        }
+        int good = 0;
+        for (int i = 0; i < size; i++) {
+            int nearest = -1;
+            double best = Double.NEGATIVE_INFINITY;
+            for (int j = 0; j < size; j++) {
+                if (j == i) {
+                    continue;
+                }
+                double sim = 0;
+                for (int e = 0; e < model.layerSize; e++) {
+                    sim += vectors[i][e] * vectors[j][e];
+                }
+                if (sim > best) {
+                    best = sim;
+                    nearest = j;
+                }
+            }
+            if (group(model.vocab[i]).equals(group(model.vocab[nearest]))) {
+                good++;
+            }
+        }
+        return (double) good / size;
+    }
+
+    private static String group(String word)
+    {
+        return word.substring(0, word.indexOf('w'));
+    }
+
+    /**
+     * Tests the accuracy of the batched mode against the plain skip gram
+     */
+    @Test
+    public void testQuality() throws InterruptedException
+    {
+        final double batched = accuracy(NeuralNetworkType.SKIP_GRAM_BATCHED);
+        final double plain = accuracy(NeuralNetworkType.SKIP_GRAM);
+        assertTrue("batched " + batched, batched >= 0.9);
+        assertTrue("batched " + batched + " plain " + plain, batched >= plain - 0.05);
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.oeuvres.jword2vec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.github.oeuvres.jword2vec.neuralnetwork.NeuralNetworkType;
+import com.google.common.base.Joiner;
+
+/**
+ * Tests streaming of a text file by {@link TextCorpus}.
+ */
+public class TextCorpusTest
+{
+    private Path tempFile = null;
+
+    /** Write the test sentences as a text file, one by line */
+    private Path write(List<List<String>> sentences) throws IOException
+    {
+        tempFile = Files.createTempFile(String.format("%s-", TextCorpusTest.class.getSimpleName()), ".txt");
+        List<String> lines = new ArrayList<>();
+        for (List<String> sentence : sentences) {
+            lines.add(Joiner.on(' ').join(sentence));
+        }
+        Files.write(tempFile, lines, StandardCharsets.UTF_8);
+        return tempFile;
+    }
+
+    /**
+     * Tests that lines are read back in order, exactly once, whatever the split of
+     * the file
+     */
+    @Test
+    public void testSplit() throws IOException
+    {
+        final List<List<String>> sentences = CorpusFileTest.sentences();
+        try (TextCorpus corpus = TextCorpus.open(write(sentences))) {
+            for (int parts : new int[] { 1, 4, 13 }) {
+                final long[] offsets = corpus.split(parts);
+                List<List<String>> read = new ArrayList<>();
+                for (int i = 0; i < parts; i++) {
+                    TextCorpus.Cursor cursor = corpus.cursor(offsets[i], offsets[i + 1]);
+                    while (cursor.next()) {
+                        read.add(new ArrayList<>(Arrays.asList(cursor.tokens()).subList(0, cursor.length())));
+                    }
+                }
+                assertEquals(sentences, read);
+            }
+        }
+    }
+
+    /**
+     * Tests that a model is trained from a path, and from a stream of the same
+     * lines
+     */
+    @Test
+    public void testTrain() throws IOException, InterruptedException
+    {
+        final Path path = write(CorpusFileTest.sentences());
+        VecModel model = VecModel.trainer().type(NeuralNetworkType.CBOW).useNegativeSamples(5).setLayerSize(20)
+                .setNumIterations(1).useNumThreads(3).setListener((stage, progress) -> {
+                }).train(path);
+        VecModel streamed = VecModel.trainer().type(NeuralNetworkType.CBOW).useNegativeSamples(5).setLayerSize(20)
+                .setNumIterations(1).useNumThreads(3).setListener((stage, progress) -> {
+                }).train(() -> {
+                    try {
+                        return Files.lines(path).map(line -> Arrays.asList(line.split(" ")));
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+        assertEquals(Arrays.asList(streamed.vocab), Arrays.asList(model.vocab));
+        assertTrue(model.contains("anarchism"));
+    }
+
+    @After
+    public void cleanupTempFile() throws IOException
+    {
+        if (tempFile != null)
+            Files.delete(tempFile);
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.oeuvres.jword2vec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import com.github.oeuvres.jword2vec.VecTrainerBuilder.TrainingProgressListener.Stage;
+import com.github.oeuvres.jword2vec.neuralnetwork.NeuralNetworkType;
+import com.github.oeuvres.jword2vec.neuralnetwork.TrainingMetrics;
+
+/**
+ * Tests the metrics reported while training, and their export to JMX
+ */
+public class TrainingMetricsTest
+{
+    /**
+     * Tests the content of the reports, the last one at the end of the training
+     */
+    @Test
+    public void testReports() throws IOException, InterruptedException, JMException
+    {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName pattern = new ObjectName("com.github.oeuvres.jword2vec:type=Training,*");
+        final List<TrainingMetrics> reports = new CopyOnWriteArrayList<>();
+        final List<Object> jmxWords = new CopyOnWriteArrayList<>();
+        final VecModel model = VecModel.trainer().type(NeuralNetworkType.CBOW).useNegativeSamples(5).setLayerSize(20)
+                .setNumIterations(2).useNumThreads(2).setListener((stage, progress) -> {
+                }).reportMetrics(metrics -> {
+                    reports.add(metrics);
+                    try {
+                        for (ObjectName name : server.queryNames(pattern, null))
+                            jmxWords.add(server.getAttribute(name, "Words"));
+                    } catch (JMException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }, 5, TimeUnit.MILLISECONDS).exportMetricsToJmx().train(CorpusFileTest.sentences());
+
+        assertFalse(reports.isEmpty());
+        assertFalse(jmxWords.isEmpty());
+        final TrainingMetrics last = reports.get(reports.size() - 1);
+        assertTrue(last.progress > 0.5);
+        assertTrue(last.words > 0);
+        assertTrue(last.wordsPerSecond > 0);
+        assertEquals(2, last.threadWordsPerSecond().length);
+        assertEquals(0, last.backlog);
+        assertEquals((long) model.vocab.length * 20 * Double.BYTES, last.syn0Bytes);
+        assertEquals(0, last.syn1Bytes);
+        assertEquals(last.syn0Bytes, last.syn1negBytes);
+        assertTrue(last.stageMillis.containsKey(Stage.ACQUIRE_VOCAB));
+        assertTrue(last.stageMillis.containsKey(Stage.TRAIN_NEURAL_NETWORK));
+        final Set<ObjectName> names = server.queryNames(pattern, null);
+        assertTrue(names.toString(), names.isEmpty());
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.oeuvres.jword2vec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.oeuvres.jword2vec.HuffmanCoding.Codes;
+import com.github.oeuvres.jword2vec.util.Common;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.ImmutableSortedMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Multisets;
+
+/**
+ * Tests the sort of the {@link Vocab} and its {@link HuffmanCoding}.
+ */
+public class VocabTest
+{
+    /**
+     * Tests that words are sorted by count descending, then lexicographically, as
+     * the multiset copies did before
+     */
+    @Test
+    public void testSort() throws IOException
+    {
+        Multiset<String> counts = HashMultiset.create(Common.readResource(VocabTest.class, "word2vec.short.txt"));
+        // reference ordering
+        final ImmutableMultiset<String> expected = Multisets.copyHighestCountFirst(
+                ImmutableSortedMultiset.copyOf(Multisets.filter(counts, s -> counts.count(s) >= 2)));
+        final Vocab vocab = Vocab.sort(counts, 2);
+        assertArrayEquals(expected.elementSet().toArray(new String[0]), vocab.words());
+        for (int id = 0; id < vocab.size(); id++) {
+            assertEquals(id, vocab.id(vocab.word(id)));
+            assertEquals(expected.count(vocab.word(id)), vocab.count(id));
+        }
+        assertEquals(-1, vocab.id("absent"));
+    }
+
+    /**
+     * Tests the radix sort on counts wider than 16 bits
+     */
+    @Test
+    public void testRadixSort()
+    {
+        long[] values = { 3, 1L << 40, 70_000, 3, 0, 1L << 40, 65_536 };
+        int[] order = Vocab.radixSortDescending(values);
+        assertArrayEquals(new int[] { 1, 5, 2, 6, 0, 3, 4 }, order);
+    }
+
+    /**
+     * Tests codes of a small known tree
+     */
+    @Test
+    public void testCodes() throws InterruptedException
+    {
+        Multiset<String> counts = HashMultiset.create();
+        counts.add("a", 8);
+        counts.add("b", 4);
+        counts.add("c", 2);
+        counts.add("d", 1);
+        final Vocab vocab = Vocab.sort(counts, 0);
+        final Codes codes = new HuffmanCoding(vocab, (stage, progress) -> {
+        }).encode();
+        List<String> words = new ArrayList<>();
+        for (int id = 0; id < vocab.size(); id++) {
+            StringBuilder sb = new StringBuilder(vocab.word(id)).append(':');
+            for (int d = codes.offsets[id]; d < codes.offsets[id + 1]; d++)
+                sb.append(codes.code[d]);
+            words.add(sb.toString());
+        }
+        assertEquals(List.of("a:1", "b:01", "c:001", "d:000"), words);
+        // first point is the root
+        assertEquals(vocab.size() - 2, codes.point[codes.offsets[3]]);
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.oeuvres.jword2vec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the primitive table of {@link WordCounts}.
+ */
+public class WordCountsTest
+{
+    /**
+     * Tests that counts of merged tables are summed
+     */
+    @Test
+    public void testMerge()
+    {
+        WordCounts a = new WordCounts(1_000_000);
+        WordCounts b = new WordCounts(1_000_000);
+        for (int i = 0; i < 10_000; i++) {
+            a.add("w" + (i % 5_000));
+            b.add("w" + (i % 3_000));
+        }
+        a.sentence();
+        b.sentence();
+        a.merge(b);
+        assertEquals(5_000, a.size());
+        assertEquals(2, a.sentences());
+        assertEquals(2 + 4, a.count("w0"));
+        assertEquals(2 + 3, a.count("w2999"));
+        assertEquals(2, a.count("w3000"));
+        assertEquals(0, a.count("absent"));
+    }
+
+    /**
+     * Tests that rare words are removed when the limit is reached, frequent words
+     * are kept with their exact count
+     */
+    @Test
+    public void testReduce()
+    {
+        WordCounts counts = new WordCounts(100);
+        for (int i = 0; i < 1_000; i++) {
+            counts.add("the");
+            counts.add("hapax" + i);
+        }
+        assertTrue(counts.size() <= 100);
+        assertEquals(1_000, counts.count("the"));
+        assertEquals(0, counts.count("hapax0"));
+    }
+
+    /**
+     * Tests that a table merging tables with a share of the limit keeps the words
+     * up to its own limit
+     */
+    @Test
+    public void testMergeShares()
+    {
+        WordCounts a = new WordCounts(100);
+        WordCounts b = new WordCounts(100);
+        for (int i = 0; i < 100; i++) {
+            a.add("a" + i);
+            b.add("b" + i);
+        }
+        a.maxSize(200);
+        a.merge(b);
+        assertEquals(200, a.size());
+        assertEquals(1, a.count("a0"));
+        assertEquals(1, a.count("b99"));
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.oeuvres.jword2vec.util;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link Kernels} with the Vector API, on the widest vectors of the CPU, the
+ * tails shorter than a vector are done in plain Java. Only compiled by the
+ * profile <code>vector</code>, loaded by reflection from {@link Kernels}.
+ */
+final class VectorKernels extends Kernels
+{
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public String name()
+    {
+        return "vector" + SPECIES.length();
+    }
+
+    @Override
+    public double dot(double[] x, int xOffset, double[] y, int yOffset, int length)
+    {
+        final int bound = SPECIES.loopBound(length);
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            final DoubleVector xv = DoubleVector.fromArray(SPECIES, x, xOffset + i);
+            final DoubleVector yv = DoubleVector.fromArray(SPECIES, y, yOffset + i);
+            sum = xv.fma(yv, sum);
+        }
+        double f = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++)
+            f += x[xOffset + i] * y[yOffset + i];
+        return f;
+    }
+
+    @Override
+    public void axpy(double a, double[] x, int xOffset, double[] y, int yOffset, int length)
+    {
+        final DoubleVector av = DoubleVector.broadcast(SPECIES, a);
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            final DoubleVector xv = DoubleVector.fromArray(SPECIES, x, xOffset + i);
+            final DoubleVector yv = DoubleVector.fromArray(SPECIES, y, yOffset + i);
+            xv.fma(av, yv).intoArray(y, yOffset + i);
+        }
+        for (; i < length; i++)
+            y[yOffset + i] += a * x[xOffset + i];
+    }
+
+    @Override
+    public void axpy2(double a, double[] hidden, int hiddenOffset, double[] output, int outputOffset,
+            double[] error, int errorOffset, int length)
+    {
+        final DoubleVector av = DoubleVector.broadcast(SPECIES, a);
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            final DoubleVector ov = DoubleVector.fromArray(SPECIES, output, outputOffset + i);
+            final DoubleVector ev = DoubleVector.fromArray(SPECIES, error, errorOffset + i);
+            final DoubleVector hv = DoubleVector.fromArray(SPECIES, hidden, hiddenOffset + i);
+            ov.fma(av, ev).intoArray(error, errorOffset + i);
+            hv.fma(av, ov).intoArray(output, outputOffset + i);
+        }
+        for (; i < length; i++) {
+            final double o = output[outputOffset + i];
+            error[errorOffset + i] += a * o;
+            output[outputOffset + i] = o + a * hidden[hiddenOffset + i];
+        }
+    }
+
+    @Override
+    public void scale(double a, double[] x, int xOffset, int length)
+    {
+        final int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, x, xOffset + i).mul(a).intoArray(x, xOffset + i);
+        }
+        for (; i < length; i++)
+            x[xOffset + i] *= a;
+    }
+}